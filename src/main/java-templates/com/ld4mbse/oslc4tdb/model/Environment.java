@@ -13,6 +13,65 @@ public interface Environment {
      * The naming of the TDB factory resource.
      */
     String TDB_NAMING_FACTORY = "${tdb.naming.factory}";
+    /**
+     * Seconds an unreferenced warehouse connection is kept open.
+     */
+    long TDB_IDLE_TIMEOUT = ${tdb.idle.timeout};
+    /**
+     * Maximum accepted request body size in bytes; negative for no limit.
+     */
+    long REQUEST_MAX_SIZE = ${request.max.size};
+    /**
+     * Number of threads running asynchronous import jobs.
+     */
+    int IMPORT_WORKERS = ${import.workers};
+    /**
+     * Seconds a finished import job is kept for status requests.
+     */
+    long IMPORT_JOB_RETENTION = ${import.job.retention};
+    /**
+     * Number of threads parsing line-based uploads; 0 for one per processor.
+     */
+    int IMPORT_PARALLELISM = ${import.parallelism};
+    /**
+     * Resources per page of paged OSLC queries not specifying a page size.
+     */
+    int QUERY_PAGE_SIZE = ${query.page.size};
+    /**
+     * Maximum number of text index hits of a full-text search; resources
+     * whose best match ranks after them are not found.
+     */
+    int QUERY_TEXT_MAX_HITS = ${query.text.max.hits};
+    /**
+     * Maximum number of cached OSLC query total counts.
+     */
+    int QUERY_COUNT_CACHE_SIZE = ${query.count.cache.size};
+    /**
+     * Maximum number of cached parsed OSLC queries.
+     */
+    int QUERY_PLAN_CACHE_SIZE = ${query.plan.cache.size};
+    /**
+     * Maximum number of cached OSLC query results.
+     */
+    int QUERY_RESULT_CACHE_SIZE = ${query.result.cache.size};
+    /**
+     * Maximum number of triples across all cached OSLC query results.
+     */
+    long QUERY_RESULT_CACHE_TRIPLES = ${query.result.cache.triples};
+    /**
+     * Default seconds a query may run before being cancelled; zero or
+     * negative for no limit.
+     */
+    long QUERY_TIMEOUT = ${query.timeout};
+    /**
+     * Default maximum number of triples of a query response; zero or
+     * negative for no limit.
+     */
+    long QUERY_MAX_TRIPLES = ${query.max.triples};
+    /**
+     * Maximum number of cached serialized OSLC discovery documents.
+     */
+    int DISCOVERY_CACHE_SIZE = ${discovery.cache.size};
     /**
      * The relative path for Graph servlet.
      */
@@ -0,0 +1,84 @@
+package com.ld4mbse.oslc4tdb.model;
+
+import com.ld4mbse.oslc4tdb.util.Resources;
+import java.io.ByteArrayOutputStream;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+
+/**
+ * An OSLC discovery document serialized in an RDF language, along with its
+ * strong entity tag, so it can be served again without being described nor
+ * serialized.
+ * @author rherrera
+ */
+public class DiscoveryDocument {
+    /**
+     * The serialized document.
+     */
+    private final byte[] content;
+    /**
+     * The strong entity tag of the serialized document, quoted.
+     */
+    private final String etag;
+    /**
+     * The serialization language.
+     */
+    private final Lang lang;
+    /**
+     * Constructs an instance serializing a document.
+     * @param document the document description.
+     * @param lang the serialization language.
+     */
+    public DiscoveryDocument(Model document, Lang lang) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RDFDataMgr.write(output, document.getGraph(), lang);
+        this.content = output.toByteArray();
+        this.etag = '"' + Resources.getETag(content) + '"';
+        this.lang = lang;
+    }
+    /**
+     * Gets the serialized document, which must not be modified.
+     * @return the serialized document.
+     */
+    public byte[] getContent() {
+        return content;
+    }
+    /**
+     * Gets the strong entity tag of the serialized document.
+     * @return the quoted entity tag.
+     */
+    public String getETag() {
+        return etag;
+    }
+    /**
+     * Gets the serialization language.
+     * @return the serialization language.
+     */
+    public Lang getLang() {
+        return lang;
+    }
+    /**
+     * Determines whether an {@code If-None-Match} header matches this
+     * document, in which case the client copy is current.
+     * @param ifNoneMatch the {@code If-None-Match} header value; may be
+     * {@code null}.
+     * @return {@code true} if the header is {@code *} or lists the entity
+     * tag of this document; {@code false} otherwise.
+     */
+    public boolean matches(String ifNoneMatch) {
+        String tag;
+        if (ifNoneMatch == null)
+            return false;
+        for (String value : ifNoneMatch.split(",")) {
+            tag = value.trim();
+            //If-None-Match uses the weak comparison
+            if (tag.startsWith("W/"))
+                tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag))
+                return true;
+        }
+        return false;
+    }
+
+}
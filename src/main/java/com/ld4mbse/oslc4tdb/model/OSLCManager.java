@@ -1,11 +1,24 @@
 package com.ld4mbse.oslc4tdb.model;
 
 import com.ld4mbse.oslc4tdb.services.TDBManager;
+import com.ld4mbse.oslc4tdb.services.WarehouseChange;
+import com.ld4mbse.oslc4tdb.tdb.query.Shape;
+import com.ld4mbse.oslc4tdb.util.Connections;
+import com.ld4mbse.oslc4tdb.util.LRUCache;
+import com.ld4mbse.oslc4tdb.util.RebuildingCache;
 import com.ld4mbse.oslc4tdb.util.Warehouses;
 import com.ld4mbse.oslc4tdb.util.OslcShaclAdapter;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Observable;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.spi.CDI;
@@ -13,9 +26,11 @@ import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ReadWrite;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.Resource;
-import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.riot.Lang;
 import org.eclipse.lyo.oslc4j.core.model.CreationFactory;
 
 /**
@@ -29,9 +44,42 @@ public class OSLCManager {
      */
     private String baseURI;
     /**
-     * The OSLC warehouses representations.
+     * The OSLC warehouses representations, patched once their shapes change.
      */
-    private Map<String, OSLCModel> oslcWarehouses;
+    private RebuildingCache<String, OSLCModel> oslcWarehouses;
+    /**
+     * The shapes graphs changed, by warehouse, since its representation was
+     * last built; a {@code null} graph stands for a change of the default
+     * graph, which requires building the whole representation.
+     */
+    private final ConcurrentMap<String, Set<String>> changes = new ConcurrentHashMap<>();
+    /**
+     * The master {@code ServiceProviderCatalog}, under the empty warehouse
+     * name, rebuilt once any warehouse is created, deleted or changed.
+     */
+    private RebuildingCache<String, Model> masterCatalog;
+    /**
+     * The serialized discovery documents, by warehouse, the representation
+     * they were described from, URL and language.
+     */
+    private final LRUCache<List<Object>, DiscoveryDocument> documents = new LRUCache<>(Environment.DISCOVERY_CACHE_SIZE);
+    /**
+     * The warehouses found when the master catalog was last requested.
+     */
+    private volatile Set<String> warehouses = Collections.EMPTY_SET;
+    /**
+     * Constructs an instance to be initialized by the container.
+     */
+    public OSLCManager() {
+    }
+    /**
+     * Constructs an initialized instance.
+     * @param baseURI the base URI to create OSLC resources.
+     * @param watcher the manager notifying the warehouse changes.
+     */
+    OSLCManager(String baseURI, TDBManager watcher) {
+        init(baseURI, watcher);
+    }
     /**
      * Initializes the TDB directory.
      */
@@ -40,43 +88,184 @@ public class OSLCManager {
         try {
             TDBManager watcher = CDI.current().select(TDBManager.class).get();
             Context module = (Context)new InitialContext().lookup("java:comp/env");
-            baseURI = module.lookup("oslc.baseURI").toString();
-            oslcWarehouses = new HashMap<>();
-            watcher.addObserver((Observable o, Object warehouse) -> {
-                oslcWarehouses.remove(warehouse.toString());
-            });
+            init(module.lookup("oslc.baseURI").toString(), watcher);
         } catch (NamingException ex) {
             throw new ExceptionInInitializerError(ex);
         }
     }
+    /**
+     * Sets the base URI and subscribes to the warehouse changes.
+     * @param baseURI the base URI to create OSLC resources.
+     * @param watcher the manager notifying the warehouse changes.
+     */
+    private void init(String baseURI, TDBManager watcher) {
+        this.baseURI = baseURI;
+        oslcWarehouses = new RebuildingCache<>(this::buildOSLCModel);
+        masterCatalog = new RebuildingCache<>(this::buildMasterCatalog);
+        watcher.addObserver((Observable o, Object arg) -> {
+            WarehouseChange change = (WarehouseChange) arg;
+            //the representations are built from the shapes and default graphs only
+            if (change.getGraph() == null || OslcShaclAdapter.isShapesGraph(change.getGraph())) {
+                addChanges(change.getWarehouse(), Collections.singleton(change.getGraph()));
+                oslcWarehouses.invalidate(change.getWarehouse());
+                masterCatalog.invalidate("");
+                removeDocuments(change.getWarehouse());
+                removeDocuments("");
+            }
+        });
+    }
 
     private OSLCModel getOSLCModel(String warehouse) {
-        Dataset warehouseData;
-        OSLCModel warehouseOSLCModel = oslcWarehouses.get(warehouse);
-        if (warehouseOSLCModel == null) {
-            warehouseData = Warehouses.get(warehouse);
-            warehouseOSLCModel = OslcShaclAdapter.getOSLCModel(baseURI, warehouse, warehouseData);
-            oslcWarehouses.put(warehouse, warehouseOSLCModel);
-            TDBFactory.release(warehouseData);
+        return oslcWarehouses.get(warehouse);
+    }
+    /**
+     * Records changed graphs of a warehouse, to be applied on the next build
+     * of its representation.
+     * @param warehouse the warehouse name.
+     * @param graphs the changed graphs.
+     */
+    private void addChanges(String warehouse, Set<String> graphs) {
+        changes.merge(warehouse, graphs, (Set<String> pending, Set<String> more) -> {
+            Set<String> union = new HashSet<>(pending);
+            union.addAll(more);
+            return union;
+        });
+    }
+    /**
+     * Builds the OSLC representation of a warehouse, patching only the stores
+     * whose shapes changed if there is a previous representation. Changes are
+     * notified once committed, so the read transaction sees them.
+     * @param warehouse the warehouse name.
+     * @param previous the previous representation; {@code null} if none.
+     * @return the OSLC representation of the warehouse.
+     */
+    private OSLCModel buildOSLCModel(String warehouse, OSLCModel previous) {
+        OSLCModel patched;
+        Set<String> graphs = changes.remove(warehouse);
+        Dataset warehouseData = Connections.acquire(warehouse);
+        try {
+            warehouseData.begin(ReadWrite.READ);
+            if (previous != null && graphs != null && !graphs.contains(null)) {
+                patched = previous.patch(warehouse, warehouseData, graphs);
+                if (patched != null)
+                    return patched;
+            }
+            return OslcShaclAdapter.getOSLCModel(baseURI, warehouse, warehouseData);
+        } catch (RuntimeException | Error ex) {
+            //kept for the next build, since the previous representation is kept
+            if (graphs != null)
+                addChanges(warehouse, graphs);
+            throw ex;
+        } finally {
+            if (warehouseData.isInTransaction())
+                warehouseData.end();
+            Connections.release(warehouse);
         }
-        return warehouseOSLCModel;
+    }
+    /**
+     * Builds the master {@code ServiceProviderCatalog} from the OSLC
+     * representations of the warehouses, so no warehouse is read unless its
+     * representation has to be rebuilt.
+     * @param name the empty master catalog name.
+     * @return the master {@code ServiceProviderCatalog}.
+     */
+    private Model buildMasterCatalog(String name) {
+        Map<String, OSLCModel> catalogs = new TreeMap<>();
+        for (String warehouse : listWarehouses())
+            catalogs.put(warehouse, getOSLCModel(warehouse));
+        return OSLCModel.getServiceProviderCatalog(
+                baseURI,
+                name,
+                "Master Service Provider Catalog.",
+                "Encapsulates all ServiceProvider for all the RDF Stores.",
+                catalogs
+        );
+    }
+    /**
+     * Lists the warehouses and, if they differ from the last listed ones,
+     * invalidates the master catalog and the OSLC representations of the
+     * created or deleted warehouses.
+     * @return the warehouse names.
+     */
+    private Set<String> listWarehouses() {
+        String[] names = Warehouses.list();
+        Set<String> current = names == null ? Collections.EMPTY_SET : new HashSet<>(Arrays.asList(names));
+        Set<String> previous = warehouses;
+        if (!current.equals(previous)) {
+            warehouses = current;
+            for (String warehouse : current)
+                if (!previous.contains(warehouse))
+                    rebuild(warehouse);
+            for (String warehouse : previous)
+                if (!current.contains(warehouse)) {
+                    rebuild(warehouse);
+                    removeDocuments(warehouse);
+                }
+            masterCatalog.invalidate("");
+            removeDocuments("");
+        }
+        return current;
+    }
+    /**
+     * Invalidates the representation of a created or deleted warehouse, so
+     * it is built as a whole instead of patched.
+     * @param warehouse the warehouse name.
+     */
+    private void rebuild(String warehouse) {
+        changes.remove(warehouse);
+        oslcWarehouses.invalidate(warehouse);
+    }
+    /**
+     * Gets a discovery document serialized in a language, describing and
+     * serializing it only if it is not cached. Documents are cached by the
+     * warehouse representation they are described from, so a document is
+     * served again only while that representation is current.
+     * @param warehouse the given warehouse name; the empty string for the
+     * master {@code ServiceProviderCatalog}.
+     * @param uri the document URL.
+     * @param lang the serialization language.
+     * @param description describes the document.
+     * @return the serialized document; {@code null} if the description is
+     * empty or does not include the document URL.
+     */
+    public DiscoveryDocument getDocument(String warehouse, String uri, Lang lang, Supplier<Model> description) {
+        Model document;
+        List<Object> key;
+        DiscoveryDocument serialized;
+        warehouse = warehouse.endsWith("/") ? warehouse.substring(0, warehouse.length() - 1) : warehouse;
+        if (warehouse.isEmpty())
+            listWarehouses();
+        key = Arrays.asList(warehouse, warehouse.isEmpty() ? masterCatalog.get(warehouse) : getOSLCModel(warehouse),
+                uri, lang);
+        if ((serialized = documents.get(key)) == null) {
+            document = description.get();
+            if (document.isEmpty() || !document.containsResource(ResourceFactory.createResource(uri)))
+                return null;
+            serialized = new DiscoveryDocument(document, lang);
+            documents.put(key, serialized);
+        }
+        return serialized;
+    }
+    /**
+     * Discards the cached discovery documents of a warehouse.
+     * @param warehouse the warehouse name; the empty string for the master
+     * {@code ServiceProviderCatalog}.
+     */
+    private void removeDocuments(String warehouse) {
+        documents.removeIf((List<Object> key) -> warehouse.equals(key.get(0)));
     }
     /**
      * Gets the {@code ServiceProviderCatalog} of the given warehouse.
      * @param warehouse the given warehouse name; send the empty string to get
-     * the master {@code ServiceProviderCatalog} of this application.
+     * the master {@code ServiceProviderCatalog} of this application, which
+     * is shared and must not be modified.
      * @return the {@code ServiceProviderCatalog} of given warehouse.
      */
     public Model getServiceProviderCatalog(String warehouse) {
-        if (warehouse.isEmpty())
-            return OSLCModel.getServiceProviderCatalog(
-                    baseURI,
-                    warehouse,
-                    "Master Service Provider Catalog.",
-                    "Encapsulates all ServiceProvider for all the RDF Stores.",
-                    Warehouses.list()
-            );
-        else {
+        if (warehouse.isEmpty()) {
+            listWarehouses();
+            return masterCatalog.get(warehouse);
+        } else {
             warehouse = warehouse.endsWith("/") ? warehouse.substring(0, warehouse.length() - 1) : warehouse;
             return getOSLCModel(warehouse)
                     .expandResource(
@@ -125,8 +314,16 @@ public class OSLCManager {
      * @return the resource rdf:type if any; {@code null} otherwise.
      */
     public Resource getQualifiedResourceType(String warehouse, String alias) {
-        Resource shape = getOSLCModel(warehouse).getResourceShapes().get(alias);
-        return shape == null ? null : shape.getPropertyResourceValue(OSLCModel.PROPS.PATHS.DESCRIBES);
+        return getOSLCModel(warehouse).getResourceType(alias);
+    }
+    /**
+     * Gets the properties declared for a resource type, to plan its queries.
+     * @param warehouse the given warehouse name.
+     * @param type the resource rdf:type; {@code null} for untyped resources.
+     * @return the type shape; {@code null} if the type has no shape.
+     */
+    public Shape getShape(String warehouse, Resource type) {
+        return type == null ? null : getOSLCModel(warehouse).getShape(type.getURI());
     }
     /**
      * Finds the {@link CreationFactory} resource for a given rdf:type and store.
@@ -1,7 +1,8 @@
 package com.ld4mbse.oslc4tdb.model;
 
+import com.ld4mbse.oslc4tdb.tdb.query.Shape;
+import com.ld4mbse.oslc4tdb.util.OslcShaclAdapter;
 import com.ld4mbse.oslc4tdb.util.Queries;
-import com.ld4mbse.oslc4tdb.util.Warehouses;
 import com.ld4mbse.oslc4tdb.util.Resources;
 import com.ld4mbse.oslc4tdb.util.Requests;
 
@@ -10,11 +11,6 @@ import java.util.*;
 import org.apache.jena.datatypes.xsd.XSDDatatype;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.query.Query;
-import org.apache.jena.query.QueryExecution;
-import org.apache.jena.query.QueryExecutionFactory;
-import org.apache.jena.query.QueryFactory;
-import org.apache.jena.query.QuerySolution;
-import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.*;
 import org.apache.jena.vocabulary.DCTerms;
 import org.apache.jena.vocabulary.RDF;
@@ -28,8 +24,6 @@ import org.eclipse.lyo.oslc4j.core.model.ServiceProviderCatalog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static com.ld4mbse.oslc4tdb.util.OslcShaclAdapter.addShapeResource;
-
 /**
  * Encapsulates the OSLC basic model.
  * @author rherrera
@@ -77,28 +71,6 @@ public class OSLCModel {
         LOG.trace("< getExpansionQuery[{}]", resource);
         return resource;
     }
-    /**
-     * Builds the SPARQL query to resolve the CreationFactory for an rdf:type.
-     * @param type the rdf:type to resolve its CreationFactory.
-     * @param store the ServiceProvider title to scope the search.
-     * @return the corresponding query.
-     */
-    private static String getCreationFactoryQuery(String type, String store) {
-        StringBuilder qry = new StringBuilder();
-        LOG.trace("> getFactoryForTypeQuery? {} @ {}", type, store);
-        Queries.prefix(OslcConstants.RDF_NAMESPACE_PREFIX, OslcConstants.RDF_NAMESPACE, qry);
-        Queries.prefix(OslcConstants.DCTERMS_NAMESPACE_PREFIX, OslcConstants.DCTERMS_NAMESPACE, qry);
-        Queries.prefix(OslcConstants.OSLC_CORE_NAMESPACE_PREFIX, OslcConstants.OSLC_CORE_DOMAIN, qry);
-        qry.append("SELECT ?crF WHERE {?srv rdf:type oslc:ServiceProvider ; ");
-        qry.append("dcterms:title \"");
-        qry.append(store);
-        qry.append("\" ; oslc:service [ oslc:creationFactory [ oslc:resourceType <");
-        qry.append(type);
-        qry.append("> ; oslc:creation ?crF ] ] }");
-        type = qry.toString();
-        LOG.trace("< getFactoryForTypeQuery[{}]", type);
-        return type;
-    }
     /**
      * Encapsulates all OSLC single property paths. Single property paths does
      * not require to have or know the Type counterpart of a property.
@@ -187,6 +159,10 @@ public class OSLCModel {
              * The oslc:totalCount property path.
              */
             Property TOTAL_COUNT = ResourceFactory.createProperty(OslcConstants.OSLC_CORE_DOMAIN, "totalCount");
+            /**
+             * The oslc:nextPage property path.
+             */
+            Property NEXT_PAGE = ResourceFactory.createProperty(OslcConstants.OSLC_CORE_DOMAIN, "nextPage");
             /**
              * The oslc:details property path.
              */
@@ -287,20 +263,19 @@ public class OSLCModel {
      * Executes a {@link QueryCapability} search.
      * @param query the CONSTRUCT query capability.
      * @param baseURL the base URL of the Query Resource representation.
+     * @param count the total number of matching resources, across all pages.
      * @param target the search target dataset.
+     * @param deadline the time, in milliseconds, at which the search is
+     * cancelled; zero for no deadline.
+     * @param maxTriples the maximum number of triples of the container; zero
+     * or negative for no limit.
      * @return an OSLC 2.0 compliant Query Response container.
      */
-    public static Model search(String query, String baseURL, Dataset target) {
+    public static Model search(Query query, String baseURL, long count, Dataset target, long deadline, long maxTriples) {
         Literal total;
-        long count = 0;
         LOG.info("\n\n{}\n\n", query);
-        Model queryResults = Queries.construct(query, target);
+        Model queryResults = Queries.construct(query, target, deadline, maxTriples);
         Resource responseInfo = queryResults.getResource(baseURL);
-        StmtIterator iterator = responseInfo.listProperties(RDFS.member);
-        while(iterator.hasNext()) {
-            iterator.next();
-            count++;
-        }
         total = ResourceFactory.createTypedLiteral(String.valueOf(count), XSDDatatype.XSDinteger);
         queryResults.add(responseInfo, RDF.type, VALUES.VALUE_TYPES.RESPONSE_TYPE);
         queryResults.add(responseInfo, PROPS.PATHS.TOTAL_COUNT, total);
@@ -312,13 +287,14 @@ public class OSLCModel {
      * @param name the catalog identifier, URL compatible.
      * @param title optional, catalog title.
      * @param description optional, the catalog description.
-     * @param catalogs optional, other available catalogs.
+     * @param catalogs optional, other available catalogs, by name, whose
+     * service providers are added to this one.
      * @param domains optional, the catalog domains.
      * @return the model template.
      */
     public static Model getServiceProviderCatalog(String baseURI, String name,
                                                   String title, String description,
-                                                  String[] catalogs, String... domains) {
+                                                  Map<String, OSLCModel> catalogs, String... domains) {
         Resource serviceProviderCatalog;
         String serviceProviderURI;
         Resource serviceProvider;
@@ -326,8 +302,6 @@ public class OSLCModel {
         Resource creationFactory;
         Resource queryCapability;
 
-        Map<String, Resource> resourceShapes = new HashMap<>();
-
         Model model = ModelFactory.createDefaultModel();
         model.setNsPrefix(OslcConstants.OSLC_CORE_NAMESPACE_PREFIX, OslcConstants.OSLC_CORE_NAMESPACE);
         model.setNsPrefix(OslcConstants.DCTERMS_NAMESPACE_PREFIX, DCTerms.NS);
@@ -338,8 +312,8 @@ public class OSLCModel {
         serviceProviderCatalog = model.createResource(Requests.buildURI(baseURI, PATHS.PREFIX, name, PATHS.SERVICE_PROVIDER_CATALOG));
         model.add(serviceProviderCatalog, RDF.type, PROPS.SERVICE_PROVIDER_CATALOG.TYPE);
 
-        if (catalogs != null && catalogs.length > 0) {
-            for (String catalog : catalogs) {
+        if (catalogs != null && !catalogs.isEmpty()) {
+            for (String catalog : catalogs.keySet()) {
 
                 LOG.info("@serviceProvider/{}", catalog);
 
@@ -356,8 +330,7 @@ public class OSLCModel {
                 model.add(serviceProvider, PROPS.SERVICE.PATH, service);
                 model.add(serviceProviderCatalog, PROPS.SERVICE_PROVIDER.PATH, serviceProvider);
 
-                Dataset dataset = Warehouses.get(catalog);
-                addShapeResource(dataset, serviceProviderCatalog, model, baseURI, catalog, resourceShapes);
+                catalogs.get(catalog).addServiceProviders(serviceProviderCatalog);
             }
         }
 
@@ -418,6 +391,16 @@ public class OSLCModel {
      * {@link ResourceShape} mapping.
      */
     private final Map<String, Resource> resourceShapes;
+    /**
+     * A simple resource type name (alias) to the rdf:type its
+     * {@link ResourceShape} describes mapping.
+     */
+    private final Map<String, Resource> resourceTypes;
+    /**
+     * The {@link CreationFactory} creation URLs, by {@code ServiceProvider}
+     * title and rdf:type URI.
+     */
+    private final Map<String, Map<String, Resource>> creationFactories;
     /**
      * The base URI to build relative ones.
      */
@@ -434,10 +417,56 @@ public class OSLCModel {
      * @param resourceShapes all the resource shapes contained.
      */
     public OSLCModel(String baseURI, Model model, Map<String, Resource> resourceShapes) {
-        this.resourceShapes = resourceShapes;
+        Resource type;
+        Map<String, Resource> types = new HashMap<>();
+        this.resourceShapes = Collections.unmodifiableMap(new HashMap<>(resourceShapes));
+        for (Map.Entry<String, Resource> entry : resourceShapes.entrySet()) {
+            type = entry.getValue().getPropertyResourceValue(PROPS.PATHS.DESCRIBES);
+            if (type != null)
+                types.put(entry.getKey(), type);
+        }
+        this.resourceTypes = Collections.unmodifiableMap(types);
+        this.creationFactories = indexCreationFactories(model);
         this.model = model;
         this.baseURI = baseURI;
     }
+    /**
+     * Indexes the {@link CreationFactory} creation URLs of a model by their
+     * {@code ServiceProvider} title and rdf:type, so they are resolved
+     * without querying the model.
+     * @param model the OSLC model definition.
+     * @return the creation URLs, by {@code ServiceProvider} title and rdf:type
+     * URI.
+     */
+    private static Map<String, Map<String, Resource>> indexCreationFactories(Model model) {
+        Resource provider, factory, creation;
+        Map<String, Resource> factories;
+        Map<String, Map<String, Resource>> index = new HashMap<>();
+        ResIterator providers = model.listResourcesWithProperty(RDF.type, PROPS.SERVICE_PROVIDER.TYPE);
+        while (providers.hasNext()) {
+            provider = providers.next();
+            for (RDFNode title : model.listObjectsOfProperty(provider, DCTerms.title).toList()) {
+                if (!title.isLiteral())
+                    continue;
+                factories = index.computeIfAbsent(title.asLiteral().getLexicalForm(), (String store) -> new HashMap<>());
+                for (RDFNode service : model.listObjectsOfProperty(provider, PROPS.SERVICE.PATH).toList()) {
+                    for (RDFNode node : model.listObjectsOfProperty(service.asResource(), PROPS.CREATION_FACTORY.PATH).toList()) {
+                        factory = node.asResource();
+                        creation = factory.getPropertyResourceValue(PROPS.PATHS.CREATION);
+                        if (creation == null)
+                            continue;
+                        for (RDFNode type : model.listObjectsOfProperty(factory, PROPS.PATHS.RESOURCE_TYPE).toList()) {
+                            //"only one sh:NodeShape per sh:targetClass is allowed" validation prevents this scenario, just in case...
+                            if (factories.putIfAbsent(type.asResource().getURI(), creation) != null)
+                                LOG.warn("More than one CreationFactory was found for <{}> in the same ServiceProvider '{}'", type, title);
+                        }
+                    }
+                }
+            }
+        }
+        index.replaceAll((String store, Map<String, Resource> factoriesByType) -> Collections.unmodifiableMap(factoriesByType));
+        return Collections.unmodifiableMap(index);
+    }
     /**
      * Returns the base URI used by this model.
      * @return the base URI used by this model.
@@ -452,7 +481,170 @@ public class OSLCModel {
      * @return the registered {@code ResourceShape}s mapping.
      */
     public Map<String, Resource> getResourceShapes() {
-        return Collections.unmodifiableMap(resourceShapes);
+        return resourceShapes;
+    }
+    /**
+     * Resolves a resource type alias to the rdf:type its {@link ResourceShape}
+     * describes.
+     * @param alias the simple resource type name.
+     * @return the resource rdf:type if any; {@code null} otherwise.
+     */
+    public Resource getResourceType(String alias) {
+        return resourceTypes.get(alias);
+    }
+    /**
+     * Gets the properties declared for a resource type by its
+     * {@link ResourceShape}, along with whether they occur exactly once.
+     * @param type the rdf:type URI.
+     * @return the type shape; {@code null} if no {@code ResourceShape}
+     * describes the type.
+     */
+    public Shape getShape(String type) {
+        Shape shape;
+        Resource property, definition;
+        StmtIterator properties;
+        for (Resource resourceShape : resourceShapes.values()) {
+            if (!resourceShape.hasProperty(PROPS.PATHS.DESCRIBES, ResourceFactory.createResource(type)))
+                continue;
+            shape = new Shape();
+            properties = resourceShape.listProperties(PROPS.PROPERTY.PATH);
+            while (properties.hasNext()) {
+                property = properties.next().getObject().asResource();
+                definition = property.getPropertyResourceValue(PROPS.PATHS.PROPERTY_DEFINITION);
+                if (definition != null)
+                    shape.declare(definition.getURI(), property.hasProperty(PROPS.PATHS.OCCURS, VALUES.OCCURS.EXACTLY_ONE));
+            }
+            return shape;
+        }
+        return null;
+    }
+    /**
+     * Adds the service providers of this model stores, along with their
+     * services and resource shapes, to another catalog.
+     * @param catalog the target catalog, within its model.
+     */
+    public void addServiceProviders(Resource catalog) {
+        Resource own;
+        Set<Resource> copied = new HashSet<>();
+        ResIterator catalogs = model.listResourcesWithProperty(RDF.type, PROPS.SERVICE_PROVIDER_CATALOG.TYPE);
+        while (catalogs.hasNext()) {
+            own = catalogs.next();
+            copied.add(own);
+            for (RDFNode provider : model.listObjectsOfProperty(own, PROPS.SERVICE_PROVIDER.PATH).toList()) {
+                //the catalog describes itself as the warehouse provider
+                if (!own.equals(provider)) {
+                    catalog.getModel().add(catalog, PROPS.SERVICE_PROVIDER.PATH, provider);
+                    copyDescription(provider.asResource(), catalog.getModel(), copied);
+                }
+            }
+        }
+    }
+    /**
+     * Copies the statements of a resource, and of the resources they refer
+     * to, into another model.
+     * @param resource the resource to copy.
+     * @param target the target model.
+     * @param copied the resources already copied.
+     */
+    private void copyDescription(Resource resource, Model target, Set<Resource> copied) {
+        if (!copied.add(resource))
+            return;
+        for (Statement statement : model.listStatements(resource, null, (RDFNode) null).toList()) {
+            target.add(statement);
+            if (statement.getObject().isResource())
+                copyDescription(statement.getObject().asResource(), target, copied);
+        }
+    }
+    /**
+     * Creates a copy of this model with the {@code ServiceProvider}s of some
+     * stores built again from their current shapes, so the other stores are
+     * neither read nor built again. Stores whose shapes graph no longer
+     * exists are removed.
+     * @param name the warehouse name.
+     * @param dataset the warehouse dataset, within a read transaction.
+     * @param shapesGraphs the changed shapes graphs URIs.
+     * @return the patched copy; {@code null} if a changed store shares a
+     * {@link ResourceShape} with another store, since the shape may have been
+     * built from either of them and the whole model has to be built.
+     */
+    public OSLCModel patch(String name, Dataset dataset, Collection<String> shapesGraphs) {
+        Resource provider;
+        Map<String, Resource> added;
+        Model target = ModelFactory.createDefaultModel();
+        Map<String, Resource> shapes = new HashMap<>();
+        target.setNsPrefixes(model.getNsPrefixMap());
+        target.add(model);
+        resourceShapes.forEach((String id, Resource shape) -> shapes.put(id, shape.inModel(target)));
+        Resource catalog = target.createResource(Requests.buildURI(baseURI, PATHS.PREFIX, name, PATHS.SERVICE_PROVIDER_CATALOG));
+        for (String graph : shapesGraphs) {
+            provider = target.createResource(Requests.buildURI(baseURI, PATHS.PREFIX, name, PATHS.SERVICE_PROVIDER, OslcShaclAdapter.getStoreName(graph)));
+            if (!removeServiceProvider(provider, catalog, shapes))
+                return null;
+        }
+        for (String graph : shapesGraphs) {
+            if (dataset.containsNamedModel(graph)) {
+                added = new HashMap<>();
+                OslcShaclAdapter.addServiceProvider(dataset.getNamedModel(graph), OslcShaclAdapter.getStoreName(graph), catalog, target, baseURI, name, added);
+                if (!Collections.disjoint(added.keySet(), shapes.keySet()))
+                    return null;
+                shapes.putAll(added);
+            }
+        }
+        LOG.info("@patched {} stores of {}", shapesGraphs.size(), name);
+        return new OSLCModel(baseURI, target, shapes);
+    }
+    /**
+     * Removes a {@code ServiceProvider} from a catalog, along with the
+     * {@link ResourceShape}s no other provider refers to.
+     * @param provider the provider to remove, within its model.
+     * @param catalog the catalog of the provider.
+     * @param shapes the resource shapes of the model, by simple id; the
+     * removed ones are discarded.
+     * @return {@code true} if the provider was removed, or did not exist;
+     * {@code false} if it shares a {@code ResourceShape} with another
+     * provider.
+     */
+    private static boolean removeServiceProvider(Resource provider, Resource catalog, Map<String, Resource> shapes) {
+        Resource shape;
+        Map.Entry<String, Resource> entry;
+        Set<Resource> referred = new HashSet<>();
+        Model target = provider.getModel();
+        target.remove(catalog, PROPS.SERVICE_PROVIDER.PATH, provider);
+        removeDescription(provider, provider.getURI() + "/", referred);
+        Iterator<Map.Entry<String, Resource>> entries = shapes.entrySet().iterator();
+        while (entries.hasNext()) {
+            entry = entries.next();
+            shape = entry.getValue();
+            if (referred.contains(shape)) {
+                if (target.contains(null, PROPS.RESOURCE_SHAPE.PATH, shape))
+                    return false;
+                removeDescription(shape, shape.getURI() + "/", new HashSet<>());
+                entries.remove();
+            }
+        }
+        return true;
+    }
+    /**
+     * Removes the statements of a resource from its model, along with the
+     * ones of the blank nodes and owned resources it refers to.
+     * @param resource the resource to remove.
+     * @param owned the URI prefix of the resources owned by the removed one.
+     * @param referred collects the other resources referred to.
+     */
+    private static void removeDescription(Resource resource, String owned, Set<Resource> referred) {
+        Resource object;
+        Model target = resource.getModel();
+        List<Statement> statements = target.listStatements(resource, null, (RDFNode) null).toList();
+        target.remove(statements);
+        for (Statement statement : statements) {
+            if (!statement.getObject().isResource())
+                continue;
+            object = statement.getObject().asResource();
+            if (object.isAnon() || object.getURI().startsWith(owned))
+                removeDescription(object, owned, referred);
+            else
+                referred.add(object);
+        }
     }
     /**
      * Finds the {@link CreationFactory} resource for a given rdf:type and store.
@@ -462,25 +654,8 @@ public class OSLCModel {
      * {@code null} otherwise.
      */
     public Resource getCreationFactory(String type, String store) {
-        Query query;
-        ResultSet results;
-        QuerySolution solution;
-        Model cachedWorkingModel;
-        Resource creationFactory = null;
-        cachedWorkingModel = model;
-        query = QueryFactory.create(getCreationFactoryQuery(type, store));
-        try(QueryExecution qe = QueryExecutionFactory.create(query, cachedWorkingModel)) {
-            results = qe.execSelect();
-            if (results.hasNext()) {
-                solution = results.next();
-                creationFactory = solution.getResource("crF");
-                if (results.hasNext()) {
-                    //"only one sh:NodeShape per sh:targetClass is allowed" validation prevents this scenario, just in case...
-                    LOG.warn("More than one CreationFactory was found for <{}> in the same ServiceProvider '{}'", type, store);
-                }
-            }
-        }
-        return creationFactory;
+        Map<String, Resource> factories = creationFactories.get(store);
+        return factories == null ? null : factories.get(type);
     }
     /**
      * Expands a resource model to contain all referenced resources up to a
@@ -1,7 +1,10 @@
 package com.ld4mbse.oslc4tdb.rest;
 
+import com.ld4mbse.oslc4tdb.model.DiscoveryDocument;
+import com.ld4mbse.oslc4tdb.services.RDFManager;
 import com.ld4mbse.oslc4tdb.util.Requests;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Enumeration;
 import java.util.Iterator;
@@ -11,15 +14,19 @@ import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
 
+import org.apache.jena.atlas.RuntimeIOException;
 import org.apache.jena.rdf.model.*;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.system.StreamRDFWriter;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static javax.ws.rs.core.HttpHeaders.ACCEPT;
+import static javax.ws.rs.core.HttpHeaders.ETAG;
+import static javax.ws.rs.core.HttpHeaders.IF_NONE_MATCH;
 import static javax.ws.rs.core.MediaType.*;
 import static javax.ws.rs.core.Response.Status.*;
 
@@ -86,6 +93,47 @@ public class RDFResource {
         }
         return acceptable;
     }
+    /**
+     * Gets the request body as a stream, without buffering it.
+     * @return the request body; {@code null} if the request has no body.
+     * @throws com.ld4mbse.oslc4tdb.rest.exception.RequestTooLargeException
+     * if the body exceeds the maximum allowed size.
+     * @throws RuntimeIOException if the body cannot be read.
+     */
+    protected InputStream getContent() {
+        try {
+            return Requests.getContent(request);
+        } catch (IOException ex) {
+            throw new RuntimeIOException(ex);
+        }
+    }
+    /**
+     * Dispatches a serialized discovery document back to the client, or just
+     * its entity tag if the client copy is current.
+     * @param document the serialized document.
+     * @return the response; {@code 304 Not Modified} if the request
+     * {@code If-None-Match} header matches the document.
+     */
+    protected Response dispatchDocument(DiscoveryDocument document) {
+        OutputStream output;
+        if (document.matches(request.getHeader(IF_NONE_MATCH)))
+            return Response.notModified().header(ETAG, document.getETag()).build();
+        try {
+            response.setContentType(document.getLang().getContentType().toHeaderString());
+            response.setHeader(ETAG, document.getETag());
+            response.setStatus(HttpServletResponse.SC_OK);
+            output = response.getOutputStream();
+            output.write(document.getContent());
+            output.flush();
+            return Response.ok().build();
+        } catch(IOException e) {
+            LOG.error("Could not write resource at " + request.getRequestURL(), e);
+            return Response.status(INTERNAL_SERVER_ERROR)
+                    .type(TEXT_PLAIN)
+                    .entity("Runtime Exception: " + e)
+                    .build();
+        }
+    }
     /**
      * Dispatches a discovery resource back to the client.
      * @param resourceModel the resource to serialize back.
@@ -134,4 +182,47 @@ public class RDFResource {
         }
     }
 
+    /**
+     * Dispatches a stored model back to the client. If the negotiated
+     * language can be written as a stream, the model is written straight from
+     * the store; otherwise it is dispatched through
+     * {@link #dispatchResource(org.apache.jena.rdf.model.Model, boolean)}.
+     * @param manager the RDF manager holding the model.
+     * @param warehouse the warehouse name.
+     * @param uri the model identifier.
+     */
+    protected Response dispatchModel(RDFManager manager, String warehouse, String uri) {
+        Lang lang = getAcceptableLanguage();
+        String url = request.getRequestURL().toString();
+        if (lang != null && !StreamRDFWriter.registered(lang))
+            return dispatchResource(manager.getModel(warehouse, uri), false);
+        try {
+            if (lang == null) {
+                if (manager.containsModel(warehouse, uri))
+                    return Response.status(NOT_ACCEPTABLE)
+                            .type(TEXT_PLAIN)
+                            .entity("Content not acceptable")
+                            .build();
+            } else {
+                response.setContentType(lang.getContentType().toHeaderString());
+                response.setStatus(HttpServletResponse.SC_OK);
+                OutputStream output = response.getOutputStream();
+                if (manager.writeModel(warehouse, uri, lang, output)) {
+                    output.flush();
+                    return Response.ok().build();
+                }
+            }
+            return Response.status(NOT_FOUND)
+                    .type(TEXT_PLAIN)
+                    .entity("The resources doesn't exists.")
+                    .build();
+        } catch(IOException e) {
+            LOG.error("Could not get resource at " + url, e);
+            return Response.status(INTERNAL_SERVER_ERROR)
+                    .type(TEXT_PLAIN)
+                    .entity("Runtime Exception: " + e)
+                    .build();
+        }
+    }
+
 }
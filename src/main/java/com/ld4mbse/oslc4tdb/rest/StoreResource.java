@@ -2,10 +2,14 @@ package com.ld4mbse.oslc4tdb.rest;
 
 import com.ld4mbse.oslc4tdb.model.Environment;
 import com.ld4mbse.oslc4tdb.model.OSLCManager;
+import com.ld4mbse.oslc4tdb.services.ImportJob;
+import com.ld4mbse.oslc4tdb.services.ImportJobs;
+import com.ld4mbse.oslc4tdb.services.ImportReport;
 import com.ld4mbse.oslc4tdb.services.RDFManager;
 import com.ld4mbse.oslc4tdb.tdb.validation.ValidationException;
 import com.ld4mbse.oslc4tdb.util.Models;
 import com.ld4mbse.oslc4tdb.util.Requests;
+import com.ld4mbse.oslc4tdb.util.Spool;
 import com.ld4mbse.oslc4tdb.util.Warehouses;
 import org.apache.jena.rdf.model.*;
 import org.apache.jena.riot.*;
@@ -21,15 +25,11 @@ import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Calendar;
+import java.util.Set;
 
 import static javax.ws.rs.core.HttpHeaders.ACCEPT;
 import static javax.ws.rs.core.HttpHeaders.LOCATION;
@@ -42,6 +42,39 @@ public class StoreResource extends RDFResource {
      * Logger of this class.
      */
     private static final Logger LOG = LoggerFactory.getLogger(StoreResource.class);
+    /**
+     * The HTTP Prefer header name.
+     */
+    private static final String PREFER = "Prefer";
+    /**
+     * The Prefer header value requesting asynchronous processing.
+     */
+    private static final String RESPOND_ASYNC = "respond-async";
+    /**
+     * Vocabulary describing import jobs.
+     */
+    private static interface JOB {
+        /**
+         * The vocabulary namespace.
+         */
+        String NS = "urn:oslc4tdb:job#";
+        /**
+         * The job state property.
+         */
+        Property STATE = ResourceFactory.createProperty(NS, "state");
+        /**
+         * The parsed statements property.
+         */
+        Property TRIPLES = ResourceFactory.createProperty(NS, "triples");
+        /**
+         * The stored statements property.
+         */
+        Property STORED = ResourceFactory.createProperty(NS, "stored");
+        /**
+         * The skipped existing resources property.
+         */
+        Property SKIPPED = ResourceFactory.createProperty(NS, "skipped");
+    }
 
     @Inject
     private RDFManager manager;
@@ -49,6 +82,9 @@ public class StoreResource extends RDFResource {
     @Inject
     private OSLCManager oslcManager;
 
+    @Inject
+    private ImportJobs jobs;
+
     public StoreResource() {
     }
 
@@ -83,11 +119,9 @@ public class StoreResource extends RDFResource {
                              @QueryParam("select") String select,
                              @HeaderParam(ACCEPT) String accept) {
         try {
-            Model model;
             if (where == null && select == null)
-                model = manager.getModel(warehouse, Models.getStoreURN(store));
-            else
-                model = manager.getModel(warehouse, Models.getStoreURN(store), where, select);
+                return dispatchModel(manager, warehouse, Models.getStoreURN(store));
+            Model model = manager.getModel(warehouse, Models.getStoreURN(store), where, select);
             return dispatchResource(model, false);
         } catch (IllegalArgumentException ex) {
             return Response.status(Response.Status.BAD_REQUEST)
@@ -99,11 +133,11 @@ public class StoreResource extends RDFResource {
 
     @POST
     public Response addGraph(@PathParam("warehouse") String warehouse,
-                             @HeaderParam(Environment.ID_HEADER) String slug,
-                             String body) {
+                             @HeaderParam(Environment.ID_HEADER) String slug) {
 
         Model shacl;
         Lang inputLanguage;
+        InputStream inputStream;
         StringBuffer requestURL = request.getRequestURL();
 
         String contentType = request.getContentType();
@@ -120,7 +154,7 @@ public class StoreResource extends RDFResource {
                     .type(TEXT_PLAIN)
                     .entity("Missing " + Environment.ID_HEADER + " header")
                     .build();
-        } else if (request.getContentLength() <= 0 || body.isEmpty()) {
+        } else if ((inputStream = getContent()) == null) {
             LOG.info("Missing request body.", warehouse);
             return Response.status(BAD_REQUEST)
                     .type(TEXT_PLAIN)
@@ -144,8 +178,6 @@ public class StoreResource extends RDFResource {
                 } else {
 
                     LOG.trace("Reading model from request body in {}.", contentType);
-                    InputStream inputStream = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
-
                     String url = Requests.buildURI(oslcManager.getBaseURI(), OslcConstants.OSLC_CORE_NAMESPACE_PREFIX, warehouse, slug) + "/";
 
                     shacl = Models.read(inputStream, url, contentType);
@@ -199,10 +231,15 @@ public class StoreResource extends RDFResource {
     @Path("{store}")
     public Response bulkLoader(@PathParam("warehouse") String warehouse,
                                @PathParam("store") String store,
-                               String body) {
+                               @QueryParam("async") boolean async,
+                               @QueryParam("bulk") boolean bulk,
+                               @HeaderParam(PREFER) String prefer) {
 
-        Model model;
+        Spool content;
+        ImportJob job;
         Lang inputLanguage;
+        ImportReport report;
+        InputStream inputStream;
         StringBuffer requestURL = request.getRequestURL();
 
         String contentType = request.getContentType();
@@ -214,7 +251,7 @@ public class StoreResource extends RDFResource {
         LOG.info("Content-Type: {}", contentType);
 
         inputLanguage = RDFLanguages.contentTypeToLang(contentType);
-        if (request.getContentLength() <= 0 || body.isEmpty()) {
+        if ((inputStream = getContent()) == null) {
             LOG.info("Missing request body.", warehouse);
             return Response.status(BAD_REQUEST)
                     .type(TEXT_PLAIN)
@@ -228,22 +265,34 @@ public class StoreResource extends RDFResource {
         } else {
             try {
 
-                LOG.trace("Reading model from request body in {}.", contentType);
-                InputStream inputStream = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
-
+                LOG.trace("Spooling request body in {}.", contentType);
                 String url = Requests.buildURI(oslcManager.getBaseURI() , OslcConstants.OSLC_CORE_NAMESPACE_PREFIX, warehouse, store) + "/";
 
-                model = Models.read(inputStream, url, contentType);
-                LOG.trace("{} statements read.", model.size());
-
-                Model modelStored = manager.getModel(warehouse, Models.getStoreURN(store));
-                List<Resource> resourceStored = modelStored.listResourcesWithProperty(RDF.type).toList();
-                List<Resource> resourceToStore = model.listResourcesWithProperty(RDF.type).toList();
+                content = Spool.of(inputStream, inputLanguage, url);
+                if (async || (prefer != null && prefer.contains(RESPOND_ASYNC))) {
+                    job = jobs.submit(warehouse, store, content, bulk);
+                    LOG.info("< [~] {} job {}", store, job.getId());
+                    return Response.status(ACCEPTED)
+                            .type(TEXT_PLAIN)
+                            .entity("The import job was queued.")
+                            .header(LOCATION, requestURL.toString() + "/jobs/" + job.getId())
+                            .build();
+                }
+                try {
+                    report = new ImportReport();
+                    if (bulk)
+                        manager.loadModel(warehouse, content, Models.getStoreURN(store), report);
+                    else
+                        manager.mergeModel(warehouse, content, Models.getStoreURN(store), report);
+                } finally {
+                    content.close();
+                }
+                LOG.trace("{} statements read.", report.getTriples());
+                Set<Resource> existing = report.getExisting();
 
-                if (Collections.disjoint(resourceToStore, resourceStored)) {
-                    LOG.trace("Storing {} new elements.", model.size());
-                    LOG.info("< [+] {}/{}", store, model.size());
-                    manager.addModel(warehouse, model, Models.getStoreURN(store));
+                if (existing.isEmpty()) {
+                    LOG.trace("Stored {} new elements.", report.getStored());
+                    LOG.info("< [+] {}/{}", store, report.getStored());
 
                     return Response.status(CREATED)
                             .type(contentType)
@@ -253,13 +302,9 @@ public class StoreResource extends RDFResource {
 
                 } else {
 
-                    List<Resource> toStoreButExist = new ArrayList<>(resourceToStore);
-                    resourceToStore.removeAll(resourceStored);
-                    toStoreButExist.removeAll(resourceToStore);
-
-                    if (resourceToStore.size() == 0) {
+                    if (!report.isModified()) {
                         LOG.trace("There are not changes to apply.");
-                        LOG.info("< [+] {}/{}", store, model.size());
+                        LOG.info("< [+] {}/{}", store, report.getStored());
 
                         return Response.status(NOT_MODIFIED)
                                 .type(TEXT_PLAIN)
@@ -267,38 +312,10 @@ public class StoreResource extends RDFResource {
                                 .build();
                     } else {
 
-                        ResIterator iterator = model.listResourcesWithProperty(RDF.type);
-                        while (iterator.hasNext()) {
-                            Resource r = iterator.next();
-                            if (toStoreButExist.contains(r)) {
-                                // remove statements where resource is subject
-                                model.removeAll(r, null, (RDFNode) null);
-                                // remove statements where resource is object
-                                model.removeAll(null, null, r);
-                            }
-                        }
-
-                        LOG.trace("Storing {} new elements.", model.size());
-                        LOG.info("< [+] {}/{}", store, model.size());
-                        manager.addModel(warehouse, model, Models.getStoreURN(store));
-
-                        Model modelResponse = ModelFactory.createDefaultModel();
-                        modelResponse.setNsPrefix(OslcConstants.OSLC_CORE_NAMESPACE_PREFIX, OslcConstants.OSLC_CORE_NAMESPACE);
-                        modelResponse.setNsPrefix(OslcConstants.DCTERMS_NAMESPACE_PREFIX, DCTerms.NS);
-                        modelResponse.setNsPrefix(OslcConstants.RDFS_NAMESPACE_PREFIX, RDFS.uri);
-                        modelResponse.setNsPrefix(OslcConstants.RDF_NAMESPACE_PREFIX, RDF.uri);
-                        modelResponse.setNsPrefix("xsd", OslcConstants.XML_NAMESPACE);
-                        modelResponse.setNsPrefixes(model.getNsPrefixMap());
-
-                        Resource container = modelResponse.createResource();
-                        modelResponse.add(container, DCTerms.title, "Resources");
-                        modelResponse.add(container, DCTerms.description, "Resources that alredy exists in the store");
-
-                        Resource member = modelResponse.createResource();
-                        for (Resource res : toStoreButExist) {
-                            modelResponse.add(member, RDF.type, res);
-                        }
-                        modelResponse.add(container, RDF.type, member);
+                        LOG.trace("Stored {} new elements.", report.getStored());
+                        LOG.info("< [+] {}/{}", store, report.getStored());
+
+                        Model modelResponse = getExistingReport(report);
 
                         response.setContentType(inputLanguage.getContentType().toHeaderString());
                         response.addHeader(LOCATION, requestURL.toString().replace("/stores", "") + "/stores");
@@ -339,11 +356,80 @@ public class StoreResource extends RDFResource {
         }
     }
 
+    /**
+     * Builds the report of resources that already existed in a store, with
+     * the namespace prefixes of the imported payload.
+     * @param report the import report.
+     * @return the report model.
+     */
+    private Model getExistingReport(ImportReport report) {
+        Set<Resource> existing = report.getExisting();
+        Model modelResponse = ModelFactory.createDefaultModel();
+        modelResponse.setNsPrefix(OslcConstants.OSLC_CORE_NAMESPACE_PREFIX, OslcConstants.OSLC_CORE_NAMESPACE);
+        modelResponse.setNsPrefix(OslcConstants.DCTERMS_NAMESPACE_PREFIX, DCTerms.NS);
+        modelResponse.setNsPrefix(OslcConstants.RDFS_NAMESPACE_PREFIX, RDFS.uri);
+        modelResponse.setNsPrefix(OslcConstants.RDF_NAMESPACE_PREFIX, RDF.uri);
+        modelResponse.setNsPrefix("xsd", OslcConstants.XML_NAMESPACE);
+        modelResponse.setNsPrefixes(report.getPrefixes());
+
+        Resource container = modelResponse.createResource();
+        modelResponse.add(container, DCTerms.title, "Resources");
+        modelResponse.add(container, DCTerms.description, "Resources that alredy exists in the store");
+
+        Resource member = modelResponse.createResource();
+        for (Resource res : existing) {
+            modelResponse.add(member, RDF.type, res);
+        }
+        modelResponse.add(container, RDF.type, member);
+        return modelResponse;
+    }
+
+    @GET
+    @Path("{store}/jobs/{job}")
+    public Response getJob(@PathParam("warehouse") String warehouse,
+                           @PathParam("store") String store,
+                           @PathParam("job") String id) {
+        Model model;
+        Resource status;
+        ImportReport report;
+        ImportJob job = jobs.get(id);
+        if (job == null || !job.getWarehouse().equals(warehouse) || !job.getStore().equals(store)) {
+            return Response.status(NOT_FOUND)
+                    .type(TEXT_PLAIN)
+                    .entity("The import job " + id + " does not exist.")
+                    .build();
+        }
+        report = job.getReport();
+        model = getExistingReport(report);
+        model.setNsPrefix("job", JOB.NS);
+        status = model.createResource(request.getRequestURL().toString());
+        model.add(status, DCTerms.identifier, job.getId());
+        model.add(status, DCTerms.created, model.createTypedLiteral(toCalendar(job.getCreated())));
+        if (job.isFinished())
+            model.add(status, DCTerms.modified, model.createTypedLiteral(toCalendar(job.getFinished())));
+        model.add(status, JOB.STATE, job.getState().name());
+        model.addLiteral(status, JOB.TRIPLES, report.getTriples());
+        model.addLiteral(status, JOB.STORED, report.getStored());
+        model.addLiteral(status, JOB.SKIPPED, (long) report.getExisting().size());
+        if (job.getError() != null)
+            model.add(status, DCTerms.description, job.getError());
+        return dispatchResource(model, true);
+    }
+    /**
+     * Converts a time in milliseconds into a calendar.
+     * @param millis the time in milliseconds.
+     * @return the corresponding calendar.
+     */
+    private static Calendar toCalendar(long millis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        return calendar;
+    }
+
     @PUT
     @Path("{store}")
     public Response updateStore(@PathParam("warehouse") String warehouse,
-                                @PathParam("store") String store,
-                                String body) {
+                                @PathParam("store") String store) {
 
         Lang inputLanguage;
         Model model;
@@ -359,7 +445,7 @@ public class StoreResource extends RDFResource {
             return Response.status(Response.Status.NOT_FOUND).type(MediaType.TEXT_PLAIN).entity("The store " + store + " does not exists in the store.").build();
         }
 
-        if (request.getContentLength() <= 0 || body.isEmpty()) {
+        if ((inputStream = getContent()) == null) {
             LOG.info("Missing request body.", store);
             return Response.status(Response.Status.BAD_REQUEST).type(MediaType.TEXT_PLAIN).entity("Missing request body").build();
         }
@@ -373,7 +459,6 @@ public class StoreResource extends RDFResource {
         }
 
         try {
-            inputStream = new ByteArrayInputStream(body.getBytes(Charset.forName("UTF-8")));
             model = ModelFactory.createDefaultModel();
             RDFDataMgr.read(model.getGraph(), inputStream, null, inputLanguage);
             manager.setSHACLModel(warehouse, model, Models.getStoreURN(store));
@@ -0,0 +1,19 @@
+package com.ld4mbse.oslc4tdb.rest.exception;
+
+import java.io.Serializable;
+
+public class QueryLimitException extends RuntimeException implements Serializable {
+
+    public QueryLimitException() {
+        super();
+    }
+
+    public QueryLimitException(String msg)   {
+        super(msg);
+    }
+
+    public QueryLimitException(String msg, Exception e)  {
+        super(msg, e);
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.ld4mbse.oslc4tdb.rest.exception;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+@Provider
+public class QueryLimitExceptionHandler implements ExceptionMapper<QueryLimitException> {
+
+    @Override
+    public Response toResponse(QueryLimitException e) {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .type(MediaType.TEXT_PLAIN)
+                .entity(e.getMessage())
+                .build();
+    }
+
+}
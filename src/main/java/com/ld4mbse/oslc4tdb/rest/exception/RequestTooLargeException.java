@@ -0,0 +1,19 @@
+package com.ld4mbse.oslc4tdb.rest.exception;
+
+import java.io.Serializable;
+
+public class RequestTooLargeException extends RuntimeException implements Serializable {
+
+    public RequestTooLargeException() {
+        super();
+    }
+
+    public RequestTooLargeException(String msg)   {
+        super(msg);
+    }
+
+    public RequestTooLargeException(String msg, Exception e)  {
+        super(msg, e);
+    }
+
+}
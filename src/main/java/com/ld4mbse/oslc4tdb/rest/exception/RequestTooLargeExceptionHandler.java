@@ -0,0 +1,19 @@
+package com.ld4mbse.oslc4tdb.rest.exception;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+@Provider
+public class RequestTooLargeExceptionHandler implements ExceptionMapper<RequestTooLargeException> {
+
+    @Override
+    public Response toResponse(RequestTooLargeException e) {
+        return Response.status(Response.Status.REQUEST_ENTITY_TOO_LARGE)
+                .type(MediaType.TEXT_PLAIN)
+                .entity(e.getMessage())
+                .build();
+    }
+
+}
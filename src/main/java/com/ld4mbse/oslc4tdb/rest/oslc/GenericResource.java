@@ -1,18 +1,24 @@
 package com.ld4mbse.oslc4tdb.rest.oslc;
 
 import com.ld4mbse.oslc4tdb.rest.RDFResource;
+import com.ld4mbse.oslc4tdb.rest.exception.QueryLimitException;
+import com.ld4mbse.oslc4tdb.model.DiscoveryDocument;
 import com.ld4mbse.oslc4tdb.model.OSLCManager;
 import com.ld4mbse.oslc4tdb.model.OSLCModel;
 import javax.inject.Inject;
 import javax.ws.rs.*;
 import javax.ws.rs.core.Response;
 
+import com.ld4mbse.oslc4tdb.services.ImportReport;
+import com.ld4mbse.oslc4tdb.services.QueryPlans;
 import com.ld4mbse.oslc4tdb.services.RDFManager;
 import com.ld4mbse.oslc4tdb.tdb.query.QueryCriteria;
 import com.ld4mbse.oslc4tdb.tdb.validation.FetchingRulesException;
 import com.ld4mbse.oslc4tdb.tdb.validation.ValidationException;
 import com.ld4mbse.oslc4tdb.util.Models;
+import com.ld4mbse.oslc4tdb.util.Requests;
 import com.ld4mbse.oslc4tdb.util.Resources;
+import com.ld4mbse.oslc4tdb.util.Spool;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Resource;
@@ -23,7 +29,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 
 import static javax.ws.rs.core.HttpHeaders.*;
 import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
@@ -39,6 +48,10 @@ public class GenericResource extends RDFResource {
      * Logger of this class.
      */
     private static final Logger LOG = LoggerFactory.getLogger(GenericResource.class);
+    /**
+     * The media type of gzip-compressed exports.
+     */
+    private static final String GZIP = "application/gzip";
 
     @Inject
     protected OSLCManager oslcManager;
@@ -46,11 +59,14 @@ public class GenericResource extends RDFResource {
     @Inject
     protected RDFManager rdfManager;
 
+    @Inject
+    protected QueryPlans queryPlans;
+
     @GET
     @Path("{warehouse:(.*/)?}" + OSLCModel.PATHS.SERVICE_PROVIDER_CATALOG)
     public Response getServiceProviderCatalog(@PathParam("warehouse") String warehouse) {
         try {
-            return dispatchResource(oslcManager.getServiceProviderCatalog(warehouse), true);
+            return dispatchDiscovery(warehouse, () -> oslcManager.getServiceProviderCatalog(warehouse));
         } catch(RuntimeException e) {
             return Response.status(INTERNAL_SERVER_ERROR)
                     .type(TEXT_PLAIN)
@@ -64,7 +80,7 @@ public class GenericResource extends RDFResource {
     public Response getServiceProvider(@PathParam("warehouse") String warehouse,
                                        @PathParam("provider") String provider) {
         try {
-            return dispatchResource(oslcManager.getServiceProvider(warehouse, provider), true);
+            return dispatchDiscovery(warehouse, () -> oslcManager.getServiceProvider(warehouse, provider));
         } catch(RuntimeException e) {
             LOG.error(e.getMessage());
             return Response.status(INTERNAL_SERVER_ERROR)
@@ -78,7 +94,7 @@ public class GenericResource extends RDFResource {
     @Path("{warehouse}/" +OSLCModel.PATHS.RESOURCE_SHAPES + "/{shape}")
     public Response getResourceShape(@PathParam("warehouse") String warehouse, @PathParam("shape") String shape) {
         try {
-            return dispatchResource(oslcManager.getResourceShape(warehouse, shape),true);
+            return dispatchDiscovery(warehouse, () -> oslcManager.getResourceShape(warehouse, shape));
         } catch(RuntimeException e) {
             return Response.status(INTERNAL_SERVER_ERROR)
                     .type(TEXT_PLAIN)
@@ -93,7 +109,7 @@ public class GenericResource extends RDFResource {
                                      @PathParam("shape") String shape,
                                      @PathParam("property") String property) {
         try {
-            return dispatchResource(oslcManager.getAllowedValues(warehouse, property, shape),true);
+            return dispatchDiscovery(warehouse, () -> oslcManager.getAllowedValues(warehouse, property, shape));
         } catch(RuntimeException e) {
             return Response.status(INTERNAL_SERVER_ERROR)
                     .type(TEXT_PLAIN)
@@ -102,6 +118,116 @@ public class GenericResource extends RDFResource {
         }
     }
 
+    /**
+     * Dispatches a discovery document, serialized only once per language
+     * until the warehouse shapes change. The document is described at most
+     * once per request.
+     * @param warehouse the warehouse name; empty for the master catalog.
+     * @param description describes the document.
+     * @return the response.
+     */
+    private Response dispatchDiscovery(String warehouse, Supplier<Model> description) {
+        Model[] described = new Model[1];
+        Lang lang = getAcceptableLanguage();
+        String uri = request.getRequestURL().toString();
+        Supplier<Model> describer = () -> {
+            if (described[0] == null)
+                described[0] = description.get();
+            return described[0];
+        };
+        DiscoveryDocument document = lang == null ? null : oslcManager.getDocument(warehouse, uri, lang, describer);
+        //not acceptable, missing or mismatched resources get their usual response
+        return document == null ? dispatchResource(describer.get(), true) : dispatchDocument(document);
+    }
+
+    @POST
+    @Path("{warehouse}/import")
+    public Response importStores(@PathParam("warehouse") String warehouse) {
+        Lang inputLanguage;
+        ImportReport report;
+        InputStream inputStream;
+        String contentType = request.getContentType();
+        String url = Requests.buildURI(oslcManager.getBaseURI(), OSLCModel.PATHS.PREFIX, warehouse) + "/";
+        if (contentType == null || contentType.isEmpty())
+            contentType = WebContent.contentTypeTriG;
+        LOG.info("POST {} as {}", request.getRequestURL(), contentType);
+        inputLanguage = RDFLanguages.contentTypeToLang(contentType);
+        if (inputLanguage == null || !RDFLanguages.isQuads(inputLanguage)) {
+            return Response.status(BAD_REQUEST)
+                    .type(TEXT_PLAIN)
+                    .entity("Incompatible ContentType: " + contentType + ", a multi-graph language is expected")
+                    .build();
+        } else if ((inputStream = getContent()) == null) {
+            return Response.status(BAD_REQUEST)
+                    .type(TEXT_PLAIN)
+                    .entity("Missing request body")
+                    .build();
+        }
+        try (Spool content = Spool.of(inputStream, inputLanguage, url)) {
+            report = new ImportReport();
+            rdfManager.importModels(warehouse, content, report);
+            LOG.info("< [+] {}/{}", warehouse, report.getStored());
+            return Response.ok()
+                    .type(TEXT_PLAIN)
+                    .entity(report.getStored() + " statements imported.")
+                    .build();
+        } catch (RiotException ex) {
+            return Response.status(BAD_REQUEST)
+                    .type(TEXT_PLAIN)
+                    .entity("Invalid syntax: " + ex.getMessage())
+                    .build();
+        } catch (IllegalArgumentException ex) {
+            return Response.status(BAD_REQUEST)
+                    .type(TEXT_PLAIN)
+                    .entity(ex.getMessage())
+                    .build();
+        } catch (IllegalStateException ex) {
+            return Response.status(SERVICE_UNAVAILABLE)
+                    .type(TEXT_PLAIN)
+                    .entity(ex.getMessage())
+                    .build();
+        } catch (IOException ex) {
+            LOG.error("Could not import into " + warehouse, ex);
+            return Response.status(INTERNAL_SERVER_ERROR)
+                    .type(TEXT_PLAIN)
+                    .entity("An Internal error has ocurred.")
+                    .build();
+        }
+    }
+
+    @GET
+    @Path("{warehouse}/export")
+    public Response exportStores(@PathParam("warehouse") String warehouse,
+                                 @QueryParam("gzip") boolean gzip) {
+        long statements;
+        OutputStream output;
+        LOG.info("GET {} gzip[{}]", request.getRequestURL(), gzip);
+        try {
+            response.setStatus(OK.getStatusCode());
+            if (gzip) {
+                response.setContentType(GZIP);
+                response.addHeader(CONTENT_DISPOSITION, "attachment; filename=\"" + warehouse + ".nq.gz\"");
+                output = new GZIPOutputStream(response.getOutputStream(), 65536);
+            } else {
+                response.setContentType(Lang.NQUADS.getContentType().toHeaderString());
+                response.addHeader(CONTENT_DISPOSITION, "attachment; filename=\"" + warehouse + ".nq\"");
+                output = response.getOutputStream();
+            }
+            statements = rdfManager.writeModels(warehouse, output);
+            if (gzip)
+                ((GZIPOutputStream)output).finish();
+            output.flush();
+            LOG.info("< {} statements exported", statements);
+            return Response.ok().build();
+        } catch(IOException e) {
+            LOG.error("Could not export " + warehouse, e);
+            return Response.status(INTERNAL_SERVER_ERROR)
+                    .type(TEXT_PLAIN)
+                    .entity(e.getMessage())
+                    .build();
+        }
+    }
+
     @GET
     @Path("{warehouse}/{store}/stores")
     public Response getStore(@PathParam("warehouse") String warehouse,
@@ -110,11 +236,9 @@ public class GenericResource extends RDFResource {
                              @QueryParam("select") String select,
                              @HeaderParam(ACCEPT) String accept) {
         try {
-            Model model;
             if (where == null && select == null)
-                model = rdfManager.getModel(warehouse, Models.getStoreURN(store));
-            else
-                model = rdfManager.getModel(warehouse, Models.getStoreURN(store), where, select);
+                return dispatchModel(rdfManager, warehouse, Models.getStoreURN(store));
+            Model model = rdfManager.getModel(warehouse, Models.getStoreURN(store), where, select);
             return dispatchResource(model, false);
         } catch (IllegalArgumentException ex) {
             return Response.status(Response.Status.BAD_REQUEST)
@@ -132,7 +256,11 @@ public class GenericResource extends RDFResource {
                                     @QueryParam("oslc.prefix") String prefixes,
                                     @QueryParam("oslc.where") String where,
                                     @QueryParam("oslc.select") String select,
-                                    @QueryParam("oslc.orderBy") String orderBy) {
+                                    @QueryParam("oslc.orderBy") String orderBy,
+                                    @QueryParam("oslc.searchTerms") String searchTerms,
+                                    @QueryParam("oslc.paging") boolean paging,
+                                    @QueryParam("oslc.pageSize") Integer pageSize,
+                                    @QueryParam("oslc.pageToken") String pageToken) {
         Lang lang;
         Model resource;
         Resource oslcType;
@@ -150,9 +278,13 @@ public class GenericResource extends RDFResource {
                         .entity("The resource " + type + " does not exists in the store.")
                         .build();
             }
-            criteria = QueryCriteria.type(oslcType).prefixes(prefixes);
-            criteria.where(where).select(select).orderBy(orderBy);
+            criteria = queryPlans.getCriteria(warehouse, oslcType, prefixes, where, select, orderBy, searchTerms);
+            criteria.paging(paging, pageSize, pageToken);
             resource = rdfManager.search(warehouse, criteria, store, queryBase);
+            if (criteria.getNextPageToken() != null) {
+                resource.add(resource.getResource(queryBase), OSLCModel.PROPS.PATHS.NEXT_PAGE,
+                        resource.createResource(getNextPage(queryBase, queryString, criteria.getNextPageToken())));
+            }
             if ((lang = getAcceptableLanguage()) == null) {
                 return Response.status(Response.Status.NOT_ACCEPTABLE)
                         .type(TEXT_PLAIN)
@@ -171,6 +303,12 @@ public class GenericResource extends RDFResource {
                     .type(TEXT_PLAIN)
                     .entity(e.getMessage())
                     .build();
+        } catch(QueryLimitException e) {
+            LOG.warn("Search cancelled at {}: {}", queryBase, e.getMessage());
+            return Response.status(SERVICE_UNAVAILABLE)
+                    .type(TEXT_PLAIN)
+                    .entity(e.getMessage())
+                    .build();
         } catch(RuntimeException | IOException e) {
             LOG.error("Could not search resources at " + queryBase, e);
             return Response.status(INTERNAL_SERVER_ERROR)
@@ -180,6 +318,29 @@ public class GenericResource extends RDFResource {
         }
     }
 
+    /**
+     * Builds the URL of the page following the current one.
+     * @param queryBase the query base URL.
+     * @param queryString the current page query string.
+     * @param token the continuation token of the following page.
+     * @return the URL of the following page.
+     */
+    private String getNextPage(String queryBase, String queryString, String token) {
+        StringBuilder next = new StringBuilder(queryBase);
+        next.append('?');
+        if (queryString != null) {
+            for (String parameter : queryString.split("&")) {
+                if (!parameter.isEmpty() && !parameter.startsWith("oslc.pageToken=")) {
+                    next.append(parameter);
+                    next.append('&');
+                }
+            }
+        }
+        next.append("oslc.pageToken=");
+        next.append(token);
+        return next.toString();
+    }
+
     @GET
     @Path("{warehouse}/{store}/{type}/{id}")
     public Response findResource(@PathParam("warehouse") String warehouse,
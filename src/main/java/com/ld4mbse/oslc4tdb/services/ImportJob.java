@@ -0,0 +1,211 @@
+package com.ld4mbse.oslc4tdb.services;
+
+import com.ld4mbse.oslc4tdb.util.Models;
+import com.ld4mbse.oslc4tdb.util.Spool;
+import java.io.IOException;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An asynchronous import of a spooled payload into a store.
+ * @author rherrera
+ */
+public class ImportJob implements Runnable {
+    /**
+     * Logger of this class.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ImportJob.class);
+    /**
+     * The states of an import job.
+     */
+    public enum State {
+        /**
+         * Waiting for a worker.
+         */
+        QUEUED,
+        /**
+         * Parsing, probing and storing the payload.
+         */
+        RUNNING,
+        /**
+         * The payload was committed into the store.
+         */
+        COMMITTED,
+        /**
+         * The import failed. A merge commits nothing, but a bulk load may
+         * leave part of the payload stored.
+         */
+        FAILED
+    }
+    /**
+     * The job identifier.
+     */
+    private final String id;
+    /**
+     * The target warehouse name.
+     */
+    private final String warehouse;
+    /**
+     * The target store name.
+     */
+    private final String store;
+    /**
+     * The payload to import.
+     */
+    private final Spool content;
+    /**
+     * Whether to use the bulk loader without duplicate detection.
+     */
+    private final boolean bulk;
+    /**
+     * The manager performing the import.
+     */
+    private final RDFManager manager;
+    /**
+     * The import progress.
+     */
+    private final ImportReport report;
+    /**
+     * Creation time, in milliseconds.
+     */
+    private final long created;
+    /**
+     * Completion time, in milliseconds; zero while not finished.
+     */
+    private volatile long finished;
+    /**
+     * The current state.
+     */
+    private volatile State state;
+    /**
+     * The failure message, if any.
+     */
+    private volatile String error;
+    /**
+     * Constructs a queued job.
+     * @param manager the manager performing the import.
+     * @param warehouse the target warehouse name.
+     * @param store the target store name.
+     * @param content the payload to import; it is closed once the job ends.
+     * @param bulk whether to use the bulk loader without duplicate detection.
+     */
+    ImportJob(RDFManager manager, String warehouse, String store, Spool content, boolean bulk) {
+        this.id = UUID.randomUUID().toString();
+        this.manager = manager;
+        this.warehouse = warehouse;
+        this.store = store;
+        this.content = content;
+        this.bulk = bulk;
+        this.report = new ImportReport();
+        this.created = System.currentTimeMillis();
+        this.state = State.QUEUED;
+    }
+
+    @Override
+    public void run() {
+        state = State.RUNNING;
+        LOG.info("> import job {} into {}/{}", id, warehouse, store);
+        try {
+            if (bulk)
+                manager.loadModel(warehouse, content, Models.getStoreURN(store), report);
+            else
+                manager.mergeModel(warehouse, content, Models.getStoreURN(store), report);
+            state = State.COMMITTED;
+            LOG.info("< import job {} committed {} statements", id, report.getStored());
+        } catch (RuntimeException ex) {
+            error = ex.getMessage();
+            state = State.FAILED;
+            LOG.error("Import job " + id + " failed", ex);
+        } finally {
+            if (state == State.RUNNING) {
+                error = "The import was aborted";
+                state = State.FAILED;
+            }
+            finished = System.currentTimeMillis();
+            try {
+                content.close();
+            } catch (IOException ex) {
+                LOG.warn("Could not delete " + content.getFile(), ex);
+            }
+        }
+    }
+    /**
+     * Marks this job as failed without running it.
+     * @param message the failure message.
+     */
+    void reject(String message) {
+        error = message;
+        state = State.FAILED;
+        finished = System.currentTimeMillis();
+        try {
+            content.close();
+        } catch (IOException ex) {
+            LOG.warn("Could not delete " + content.getFile(), ex);
+        }
+    }
+    /**
+     * Gets the job identifier.
+     * @return the job identifier.
+     */
+    public String getId() {
+        return id;
+    }
+    /**
+     * Gets the target warehouse name.
+     * @return the target warehouse name.
+     */
+    public String getWarehouse() {
+        return warehouse;
+    }
+    /**
+     * Gets the target store name.
+     * @return the target store name.
+     */
+    public String getStore() {
+        return store;
+    }
+    /**
+     * Gets the import progress.
+     * @return the import progress.
+     */
+    public ImportReport getReport() {
+        return report;
+    }
+    /**
+     * Gets the creation time.
+     * @return the creation time, in milliseconds.
+     */
+    public long getCreated() {
+        return created;
+    }
+    /**
+     * Gets the completion time.
+     * @return the completion time, in milliseconds; zero if not finished.
+     */
+    public long getFinished() {
+        return finished;
+    }
+    /**
+     * Gets the current state.
+     * @return the current state.
+     */
+    public State getState() {
+        return state;
+    }
+    /**
+     * Gets the failure message.
+     * @return the failure message; {@code null} if the job did not fail.
+     */
+    public String getError() {
+        return error;
+    }
+    /**
+     * Determines whether this job has finished.
+     * @return {@code true} if the job was committed or failed.
+     */
+    public boolean isFinished() {
+        return state == State.COMMITTED || state == State.FAILED;
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.ld4mbse.oslc4tdb.services;
+
+import com.ld4mbse.oslc4tdb.model.Environment;
+import com.ld4mbse.oslc4tdb.util.Spool;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs {@link ImportJob import jobs} in the background and keeps them for
+ * status requests until {@link Environment#IMPORT_JOB_RETENTION} seconds
+ * after they finish.
+ * @author rherrera
+ */
+@ApplicationScoped
+public class ImportJobs {
+    /**
+     * Logger of this class.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ImportJobs.class);
+    /**
+     * The manager performing the imports.
+     */
+    @Inject
+    private RDFManager manager;
+    /**
+     * The jobs by identifier.
+     */
+    private Map<String, ImportJob> jobs;
+    /**
+     * The workers running the jobs.
+     */
+    private ExecutorService executor;
+
+    public ImportJobs() {
+    }
+
+    public ImportJobs(RDFManager manager) {
+        this.manager = manager;
+    }
+    /**
+     * Starts the workers.
+     */
+    @PostConstruct
+    protected void init() {
+        AtomicInteger count = new AtomicInteger();
+        jobs = new ConcurrentHashMap<>();
+        executor = Executors.newFixedThreadPool(Math.max(1, Environment.IMPORT_WORKERS), (Runnable task) -> {
+            Thread thread = new Thread(task, "import-job-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    /**
+     * Stops the workers; queued jobs are rejected.
+     */
+    @PreDestroy
+    protected void destroy() {
+        for (Runnable queued : executor.shutdownNow())
+            ((ImportJob) queued).reject("The import service is shutting down");
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS))
+                LOG.warn("Import jobs still running on shutdown");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    /**
+     * Queues the import of a spooled payload into a store.
+     * @param warehouse the target warehouse name.
+     * @param store the target store name.
+     * @param content the payload; the job deletes it once finished.
+     * @param bulk whether to use the bulk loader without duplicate detection.
+     * @return the queued job.
+     */
+    public ImportJob submit(String warehouse, String store, Spool content, boolean bulk) {
+        ImportJob job = new ImportJob(manager, warehouse, store, content, bulk);
+        evict();
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException ex) {
+            job.reject("The import service is shutting down");
+        }
+        LOG.debug("Import job {} queued for {}/{}", job.getId(), warehouse, store);
+        return job;
+    }
+    /**
+     * Gets a job by its identifier.
+     * @param id the job identifier.
+     * @return the job; {@code null} if it does not exist or it was evicted.
+     */
+    public ImportJob get(String id) {
+        evict();
+        return jobs.get(id);
+    }
+    /**
+     * Removes the finished jobs older than the retention period.
+     */
+    private void evict() {
+        long limit = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(Environment.IMPORT_JOB_RETENTION);
+        jobs.values().removeIf((ImportJob job) -> job.isFinished() && job.getFinished() < limit);
+    }
+
+}
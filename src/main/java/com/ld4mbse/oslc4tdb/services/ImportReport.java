@@ -0,0 +1,128 @@
+package com.ld4mbse.oslc4tdb.services;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.jena.rdf.model.Resource;
+
+/**
+ * Outcome of importing an RDF payload into a store. Counters are updated
+ * while the import runs, so they can be read from other threads.
+ * @author rherrera
+ */
+public class ImportReport {
+    /**
+     * Number of statements parsed from the payload.
+     */
+    private final AtomicLong triples = new AtomicLong();
+    /**
+     * Number of statements added into the store.
+     */
+    private final AtomicLong stored = new AtomicLong();
+    /**
+     * Number of typed resources in the payload.
+     */
+    private volatile long resources;
+    /**
+     * Typed resources of the payload that already existed in the store.
+     */
+    private final Set<Resource> existing = ConcurrentHashMap.newKeySet();
+    /**
+     * Namespace prefixes declared by the payload.
+     */
+    private final Map<String, String> prefixes = new ConcurrentHashMap<>();
+    /**
+     * Constructs an empty report.
+     */
+    public ImportReport() {
+    }
+    /**
+     * Accounts a statement parsed from the payload.
+     */
+    void addTriple() {
+        triples.incrementAndGet();
+    }
+    /**
+     * Accounts a statement added into the store.
+     */
+    void addStored() {
+        stored.incrementAndGet();
+    }
+    /**
+     * Sets the number of statements added into the store.
+     * @param stored the number of statements added into the store.
+     */
+    void setStored(long stored) {
+        this.stored.set(stored);
+    }
+    /**
+     * Sets the number of typed resources in the payload.
+     * @param resources the number of typed resources in the payload.
+     */
+    void setResources(long resources) {
+        this.resources = resources;
+    }
+    /**
+     * Accounts a typed resource that already existed in the store.
+     * @param resource the existing resource.
+     */
+    void addExisting(Resource resource) {
+        existing.add(resource);
+    }
+    /**
+     * Accounts a namespace prefix declared by the payload.
+     * @param prefix the prefix.
+     * @param iri the namespace IRI.
+     */
+    void addPrefix(String prefix, String iri) {
+        prefixes.put(prefix, iri);
+    }
+    /**
+     * Gets the number of statements parsed from the payload.
+     * @return the number of statements parsed from the payload.
+     */
+    public long getTriples() {
+        return triples.get();
+    }
+    /**
+     * Gets the number of statements added into the store.
+     * @return the number of statements added into the store.
+     */
+    public long getStored() {
+        return stored.get();
+    }
+    /**
+     * Gets the number of typed resources in the payload.
+     * @return the number of typed resources in the payload.
+     */
+    public long getResources() {
+        return resources;
+    }
+    /**
+     * Gets the typed resources of the payload that already existed in the
+     * store and therefore were skipped.
+     * @return the skipped existing resources.
+     */
+    public Set<Resource> getExisting() {
+        return Collections.unmodifiableSet(existing);
+    }
+    /**
+     * Gets the namespace prefixes declared by the payload, so reports on it
+     * can use them.
+     * @return the namespace IRIs by prefix.
+     */
+    public Map<String, String> getPrefixes() {
+        return Collections.unmodifiableMap(prefixes);
+    }
+    /**
+     * Determines whether the payload added any new typed resource.
+     * @return {@code true} if at least one typed resource was new or the
+     * payload has no typed resources at all; {@code false} otherwise.
+     */
+    public boolean isModified() {
+        return existing.isEmpty() || existing.size() < resources;
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.ld4mbse.oslc4tdb.services;
+
+import com.ld4mbse.oslc4tdb.model.Environment;
+import com.ld4mbse.oslc4tdb.model.OSLCManager;
+import com.ld4mbse.oslc4tdb.tdb.query.QueryCriteria;
+import com.ld4mbse.oslc4tdb.util.LRUCache;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Observable;
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.spi.CDI;
+import javax.inject.Inject;
+import org.apache.jena.rdf.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the parsed OSLC query parameters, along with the Jena queries built
+ * from them, so frequent searches are neither parsed nor built again. Plans
+ * of a warehouse are discarded whenever {@link TDBManager} notifies a change
+ * of its shapes or stores.
+ * @author rherrera
+ */
+@ApplicationScoped
+public class QueryPlans {
+    /**
+     * Logger of this class.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(QueryPlans.class);
+    /**
+     * The parsed criteria, by warehouse, type and query parameters.
+     */
+    private final LRUCache<List<String>, QueryCriteria> plans = new LRUCache<>(Environment.QUERY_PLAN_CACHE_SIZE);
+    /**
+     * The manager providing the shapes to plan the queries with.
+     */
+    @Inject
+    private OSLCManager oslcManager;
+    /**
+     * Subscribes to the warehouse changes.
+     */
+    @PostConstruct
+    protected void init() {
+        TDBManager watcher = CDI.current().select(TDBManager.class).get();
+        watcher.addObserver((Observable o, Object change) -> {
+            invalidate(((WarehouseChange) change).getWarehouse());
+        });
+    }
+    /**
+     * Gets the criteria for a set of OSLC query parameters, parsing them only
+     * if they are not cached. Criteria are planned with the shape of their
+     * type, if any.
+     * @param warehouse the warehouse name.
+     * @param type the resource type to retrieve.
+     * @param prefixes the {@code oslc.prefix} parameter.
+     * @param where the {@code oslc.where} parameter.
+     * @param select the {@code oslc.select} parameter.
+     * @param orderBy the {@code oslc.orderBy} parameter.
+     * @param searchTerms the {@code oslc.searchTerms} parameter.
+     * @return an unpaged criteria, private to the caller.
+     * @throws IllegalArgumentException if any parameter is bad formed or
+     * refers to a property the type shape does not declare.
+     */
+    public QueryCriteria getCriteria(String warehouse, Resource type, String prefixes, String where, String select,
+            String orderBy, String searchTerms) {
+        List<String> key = Arrays.asList(warehouse, type == null ? null : type.getURI(), prefixes, where, select, orderBy,
+                searchTerms);
+        QueryCriteria plan = plans.get(key);
+        if (plan == null) {
+            plan = QueryCriteria.type(type).shape(oslcManager.getShape(warehouse, type)).prefixes(prefixes).where(where).select(select).orderBy(orderBy)
+                    .searchTerms(searchTerms);
+            plan.validate();
+            plans.put(key, plan);
+            LOG.debug("[+] plan {}", key);
+        }
+        return plan.copy();
+    }
+    /**
+     * Discards the cached plans of a warehouse.
+     * @param warehouse the warehouse name.
+     */
+    public void invalidate(String warehouse) {
+        plans.removeIf((List<String> key) -> warehouse.equals(key.get(0)));
+    }
+
+}
@@ -1,9 +1,12 @@
 package com.ld4mbse.oslc4tdb.services;
 
 import com.ld4mbse.oslc4tdb.tdb.query.QueryCriteria;
+import com.ld4mbse.oslc4tdb.util.Spool;
+import java.io.OutputStream;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.Lang;
 
 /**
  * The RDF manager definition.
@@ -49,6 +52,48 @@ public interface RDFManager {
 
     void addModel(String warehouse, Model model, String uri);
 
+    /**
+     * Adds an RDF payload skipping the typed resources that already exist in
+     * the target named model. The payload is read twice within the same write
+     * transaction: first to collect its typed resources, which are probed
+     * against the store indexes; then to add the statements not involving
+     * an existing resource. If no new typed resource remains, nothing is
+     * added.
+     * @param warehouse the name of the warehouse to add into.
+     * @param content the spooled payload.
+     * @param uri the target named model URI.
+     * @param report the import report to update while the import runs.
+     */
+    void mergeModel(String warehouse, Spool content, String uri, ImportReport report);
+
+    /**
+     * Loads an RDF payload through the store bulk loader without duplicate
+     * detection. Much faster than {@link #mergeModel} for large payloads,
+     * but not transactional: a failure while loading may leave part of the
+     * payload stored.
+     * @param warehouse the name of the warehouse to load into.
+     * @param content the spooled payload.
+     * @param uri the target named model URI.
+     * @param report the import report to update while the load runs.
+     */
+    void loadModel(String warehouse, Spool content, String uri, ImportReport report);
+
+    /**
+     * Imports a multi-graph payload (TriG, N-Quads) into the stores of a
+     * warehouse in a single streaming pass and write transaction. Every
+     * named graph of the payload must be the URN of a store, that is, a
+     * graph with a matching {@code -shacl} shape graph, or a shape graph
+     * itself; otherwise nothing is imported. Shape graphs replace the stored
+     * ones and must precede the data graphs of their stores, as in the
+     * output of {@link #writeModels(String, OutputStream)}.
+     * @param warehouse the name of the warehouse to import into.
+     * @param content the spooled payload.
+     * @param report the import report to update while the import runs.
+     * @throws IllegalArgumentException if the payload has statements outside
+     *         a store graph, or shapes that cannot be mapped to OSLC.
+     */
+    void importModels(String warehouse, Spool content, ImportReport report);
+
     /**
      * Retrieves a model under a given URI.
      * @param warehouse the name of the warehouse we want to search in.
@@ -58,6 +103,31 @@ public interface RDFManager {
      */
     Model getModel(String warehouse, String model);
 
+    /**
+     * Streams a model under a given URI straight from the store, without
+     * copying it in memory first. Nothing is written if the model is empty.
+     * @param warehouse the name of the warehouse we want to search in.
+     * @param uri the model identifier. If {@code null} then the default
+     *            model on de {@link Dataset} will be written.
+     * @param lang the output language; it must be supported by
+     *             {@link org.apache.jena.riot.system.StreamRDFWriter}.
+     * @param output the stream to write to.
+     * @return {@code true} if the model was written; {@code false} if it is
+     *         empty or does not exist.
+     */
+    boolean writeModel(String warehouse, String uri, Lang lang, OutputStream output);
+
+    /**
+     * Streams every named model of a warehouse as N-Quads, shape graphs
+     * first, from a single read transaction so the output is a consistent
+     * snapshot. Statements are written as they are read from the store
+     * indexes, so memory use does not depend on the warehouse size.
+     * @param warehouse the name of the warehouse to export.
+     * @param output the stream to write to.
+     * @return the number of statements written.
+     */
+    long writeModels(String warehouse, OutputStream output);
+
     /**
      * Retrieves a filtered model under a given URI.
      * @param warehouse the name of the warehouse we want to search in.
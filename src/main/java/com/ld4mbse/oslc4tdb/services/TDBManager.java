@@ -1,41 +1,74 @@
 package com.ld4mbse.oslc4tdb.services;
 
+import com.ld4mbse.oslc4tdb.model.Environment;
 import com.ld4mbse.oslc4tdb.model.OSLCModel;
 import com.ld4mbse.oslc4tdb.model.SHACLModel;
+import com.ld4mbse.oslc4tdb.rest.exception.QueryLimitException;
 import com.ld4mbse.oslc4tdb.tdb.query.QueryCriteria;
 import com.ld4mbse.oslc4tdb.tdb.validation.ShaclValidator;
+import com.ld4mbse.oslc4tdb.util.Connections;
+import com.ld4mbse.oslc4tdb.util.LRUCache;
 import com.ld4mbse.oslc4tdb.util.Models;
+import com.ld4mbse.oslc4tdb.util.OslcShaclAdapter;
+import com.ld4mbse.oslc4tdb.util.Queries;
 import com.ld4mbse.oslc4tdb.util.Requests;
+import com.ld4mbse.oslc4tdb.util.Spool;
+import com.ld4mbse.oslc4tdb.util.TextIndexes;
 import com.ld4mbse.oslc4tdb.util.Warehouses;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.enterprise.context.ApplicationScoped;
+import org.apache.jena.atlas.RuntimeIOException;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
 import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryCancelledException;
 import org.apache.jena.query.QueryExecution;
-import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.QueryFactory;
 import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.ReadWrite;
 import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
-import org.apache.jena.rdf.model.Property;
-import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.ResIterator;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.ResourceFactory;
 import org.apache.jena.rdf.model.SimpleSelector;
 import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.system.StreamOps;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.riot.system.StreamRDFWriter;
 import org.apache.jena.shared.Lock;
-import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.tdb.store.DatasetGraphTDB;
+import org.apache.jena.tdb.store.bulkloader.BulkLoader;
 import org.apache.jena.vocabulary.DCTerms;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
@@ -47,7 +80,8 @@ import static com.ld4mbse.oslc4tdb.util.OslcShaclAdapter.getResourceShape;
 import static com.ld4mbse.oslc4tdb.util.OslcShaclAdapter.getSimpleId;
 
 /**
- * TDB implementation for {@link RDFManager}.
+ * TDB implementation for {@link RDFManager}. Observers are notified with a
+ * {@link WarehouseChange} per changed graph, once the change is committed.
  * @author rherrera
  */
 @ApplicationScoped
@@ -95,6 +129,57 @@ public class TDBManager extends Observable implements RDFManager {
 
     private boolean updatingSHACL;
 
+    /**
+     * Total counts of searches, by warehouse, store version and count query.
+     */
+    private final LRUCache<List<Object>, Long> counts = new LRUCache<>(Environment.QUERY_COUNT_CACHE_SIZE);
+
+    /**
+     * Results of searches, by warehouse, store version and queries; bounded
+     * by their total number of triples.
+     */
+    private final LRUCache<List<Object>, SearchResult> results = new LRUCache<>(Environment.QUERY_RESULT_CACHE_SIZE,
+            Environment.QUERY_RESULT_CACHE_TRIPLES, (SearchResult result) -> result.size);
+
+    /**
+     * The outcome of a search, as cached.
+     */
+    private static class SearchResult {
+        /**
+         * The OSLC Query Response container.
+         */
+        private final Model model;
+        /**
+         * The number of triples of the container.
+         */
+        private final long size;
+        /**
+         * The continuation token of the following page, if any.
+         */
+        private final String nextPageToken;
+
+        private SearchResult(Model model, String nextPageToken) {
+            this.model = model;
+            this.size = model.size();
+            this.nextPageToken = nextPageToken;
+        }
+    }
+
+    /**
+     * Receiver of parsed triples. Quads on the default graph are handled as
+     * triples and quads on named graphs are ignored, as when reading into a
+     * model.
+     */
+    private abstract static class TripleSink extends StreamRDFBase {
+
+        @Override
+        public void quad(Quad quad) {
+            if (quad.isTriple() || quad.isDefaultGraph())
+                triple(quad.asTriple());
+        }
+
+    }
+
     /**
      * Initialization block.
      */
@@ -144,7 +229,7 @@ public class TDBManager extends Observable implements RDFManager {
         String name;
         Iterator<String> names;
         LOG.debug("> ? model match {}", pattern);
-        Dataset dataset = Warehouses.get(warehouse);
+        Dataset dataset = Connections.acquire(warehouse);
         dataset.begin(ReadWrite.READ);
         lock = dataset.getLock();
         try {
@@ -172,9 +257,7 @@ public class TDBManager extends Observable implements RDFManager {
         } finally {
             dataset.end();
             lock.leaveCriticalSection();
-
-            TDBFactory.release(dataset);
-            LOG.info("{} Dataset directory released", warehouse);
+            Connections.release(warehouse);
         }
         return uris;
     }
@@ -184,8 +267,7 @@ public class TDBManager extends Observable implements RDFManager {
         Lock lock;
         boolean contains = true;
         LOG.debug("> EXISTS model @ {}", model);
-        Dataset dataset = Warehouses.get(warehouse);
-        LOG.info("{} Dataset directory connected", warehouse);
+        Dataset dataset = Connections.acquire(warehouse);
         dataset.begin(ReadWrite.READ);
         lock = dataset.getLock();
         try {
@@ -199,9 +281,7 @@ public class TDBManager extends Observable implements RDFManager {
         } finally {
             dataset.end();
             lock.leaveCriticalSection();
-
-            TDBFactory.release(dataset);
-            LOG.info("{} Dataset directory released", warehouse);
+            Connections.release(warehouse);
 
         }
         return contains;
@@ -211,8 +291,7 @@ public class TDBManager extends Observable implements RDFManager {
 
         Lock lock;
         LOG.debug("> + model @ {}", uri);
-        Dataset dataset = Warehouses.get(catalog);
-        LOG.info("{} Dataset directory connected", catalog);
+        Dataset dataset = Connections.acquire(catalog);
         dataset.begin(ReadWrite.WRITE);
         lock = dataset.getLock();
         LOG.debug("> + updatingSHACL @ {}", updatingSHACL);
@@ -269,11 +348,11 @@ public class TDBManager extends Observable implements RDFManager {
             dataset.replaceNamedModel(uri + "-shacl", shacl);
             LOG.info("{} SHACL Definition created", uri + "-shacl");
 
-            setChanged();
-            notifyObservers(catalog);
             updatingSHACL = false;
 
             dataset.commit();
+            Connections.modified(catalog, uri + "-shacl");
+            notifyChange(catalog, uri + "-shacl");
             LOG.debug("< [+] {} statements", shacl.size());
         } catch(Exception ex) {
             dataset.abort();
@@ -281,62 +360,361 @@ public class TDBManager extends Observable implements RDFManager {
         } finally {
             dataset.end();
             lock.leaveCriticalSection();
-
-            TDBFactory.release(dataset);
-            LOG.info("{} Dataset directory released", catalog);
+            Connections.release(catalog);
         }
     }
 
     public void addModel(String warehouse, Model model, String uri) {
         Lock lock;
-        boolean mustUpdateOLSCmodel;
+        boolean created;
         LOG.debug("> + model @ {}", uri);
-        Dataset dataset = Warehouses.get(warehouse);
-        LOG.info("{} Dataset directory connected", warehouse);
+        Dataset dataset = Connections.acquire(warehouse);
         dataset.begin(ReadWrite.WRITE);
         lock = dataset.getLock();
         LOG.debug("> + updatingSHACL @ {}", updatingSHACL);
         try {
             lock.enterCriticalSection(Lock.WRITE);
-            if (uri == null) {
-                throw new IllegalStateException("URI does not specified.");
+            created = storeModel(dataset, uri, () -> dataset.addNamedModel(uri, model));
+            dataset.commit();
+            Connections.modified(warehouse, uri);
+            if (created)
+                notifyChange(warehouse, uri);
+            LOG.debug("< [+] {} statements", model.size());
+        } catch(Exception ex) {
+            dataset.abort();
+            throw ex;
+        } finally {
+            dataset.end();
+            lock.leaveCriticalSection();
+            Connections.release(warehouse);
+        }
+
+    }
+
+    /**
+     * Adds statements into a named model of an open dataset. Must be called
+     * within a write transaction.
+     * @param dataset the open dataset.
+     * @param uri the named model URI.
+     * @param writer the actual addition of statements.
+     * @return {@code true} if the named model was created, which must be
+     * notified once committed; {@code false} otherwise.
+     */
+    private boolean storeModel(Dataset dataset, String uri, Runnable writer) {
+        boolean mustUpdateOLSCmodel;
+        if (uri == null) {
+            throw new IllegalStateException("URI does not specified.");
+        } else {
+            Model validationRules = dataset.getNamedModel(uri + "-shacl");
+            ShaclValidator validator = new ShaclValidator(false);
+
+            if (!updatingSHACL) {
+                validator.update(null, validationRules);
+                // validator.validate(model);
+                mustUpdateOLSCmodel = !dataset.containsNamedModel(uri);
+                writer.run();
+                return mustUpdateOLSCmodel;
             } else {
-                Model validationRules = dataset.getNamedModel(uri + "-shacl");
-                ShaclValidator validator = new ShaclValidator(false);
-
-                if (!updatingSHACL) {
-                    validator.update(null, validationRules);
-                    // validator.validate(model);
-                    mustUpdateOLSCmodel = !dataset.containsNamedModel(uri);
-                    dataset.addNamedModel(uri, model);
-                    if (mustUpdateOLSCmodel) {
-                        setChanged();
-                        notifyObservers(warehouse);
+                throw new IllegalStateException("SHACL Models are being updated, please try later.");
+            }
+        }
+    }
+
+    @Override
+    public void mergeModel(String warehouse, Spool content, String uri, ImportReport report) {
+        Lock lock;
+        Graph stored;
+        boolean created = false;
+        Set<Node> typed = new HashSet<>();
+        Set<Node> existing = new HashSet<>();
+        Node type = RDF.type.asNode();
+        LOG.debug("> + merge {} @ {}", content.getFile(), uri);
+        if (uri == null)
+            throw new IllegalStateException("URI does not specified.");
+        Dataset dataset = Connections.acquire(warehouse);
+        dataset.begin(ReadWrite.WRITE);
+        lock = dataset.getLock();
+        try {
+            lock.enterCriticalSection(Lock.WRITE);
+            stored = dataset.getNamedModel(uri).getGraph();
+            content.parse(new TripleSink() {
+                @Override
+                public void triple(Triple triple) {
+                    report.addTriple();
+                    if (type.equals(triple.getPredicate()))
+                        typed.add(triple.getSubject());
+                }
+
+                @Override
+                public void prefix(String prefix, String iri) {
+                    report.addPrefix(prefix, iri);
+                }
+            });
+            report.setResources(typed.size());
+            if (dataset.containsNamedModel(uri)) {
+                for (Node subject : typed) {
+                    if (subject.isURI() && stored.contains(subject, type, Node.ANY)) {
+                        existing.add(subject);
+                        report.addExisting(ResourceFactory.createResource(subject.getURI()));
                     }
-                } else {
-                    throw new IllegalStateException("SHACL Models are being updated, please try later.");
                 }
+            }
+            typed.clear();
+            if (report.isModified()) {
+                created = storeModel(dataset, uri, () -> content.parse(new TripleSink() {
+                    @Override
+                    public void triple(Triple triple) {
+                        if (!existing.contains(triple.getSubject()) && !existing.contains(triple.getObject())) {
+                            stored.add(triple);
+                            report.addStored();
+                        }
+                    }
 
+                    @Override
+                    public void prefix(String prefix, String iri) {
+                        stored.getPrefixMapping().setNsPrefix(prefix, iri);
+                    }
+                }));
             }
             dataset.commit();
-            LOG.debug("< [+] {} statements", model.size());
+            Connections.modified(warehouse, uri);
+            if (created)
+                notifyChange(warehouse, uri);
+            LOG.debug("< [+] {}/{} statements, {} existing resources", report.getStored(), report.getTriples(), existing.size());
         } catch(Exception ex) {
             dataset.abort();
             throw ex;
         } finally {
             dataset.end();
             lock.leaveCriticalSection();
+            Connections.release(warehouse);
+        }
+    }
+
+    @Override
+    public void loadModel(String warehouse, Spool content, String uri, ImportReport report) {
+        LOG.debug("> + bulk load {} @ {}", content.getFile(), uri);
+        if (uri == null)
+            throw new IllegalStateException("URI does not specified.");
+        bulkLoad(warehouse, content, uri, report);
+    }
 
-            TDBFactory.release(dataset);
-            LOG.info("{} Dataset directory released", warehouse);
+    @Override
+    public void importModels(String warehouse, Spool content, ImportReport report) {
+        Lock lock;
+        DatasetGraph storage;
+        Set<Node> shapes = new HashSet<>();
+        Set<Node> created = new HashSet<>();
+        Map<Node, Boolean> stores = new HashMap<>();
+        LOG.debug("> + import {} @ {}", content.getFile(), warehouse);
+        Dataset dataset = Connections.acquire(warehouse);
+        dataset.begin(ReadWrite.WRITE);
+        lock = dataset.getLock();
+        try {
+            lock.enterCriticalSection(Lock.WRITE);
+            if (updatingSHACL)
+                throw new IllegalStateException("SHACL Models are being updated, please try later.");
+            storage = dataset.asDatasetGraph();
+            content.parse(new StreamRDFBase() {
+                @Override
+                public void triple(Triple triple) {
+                    throw new IllegalArgumentException("Statement outside a store graph: " + triple);
+                }
+
+                @Override
+                public void quad(Quad quad) {
+                    Node graph = quad.getGraph();
+                    if (quad.isTriple() || quad.isDefaultGraph())
+                        triple(quad.asTriple());
+                    if (isShapes(graph)) {
+                        //imported shape graphs replace the stored ones
+                        if (shapes.add(graph))
+                            storage.removeGraph(graph);
+                    } else if (!stores.computeIfAbsent(graph, (Node name) -> isStore(storage, name)))
+                        throw new IllegalArgumentException("Graph " + graph + " has no SHACL shape graph in " + warehouse);
+                    if (!storage.containsGraph(graph))
+                        created.add(graph);
+                    report.addTriple();
+                    if (!storage.contains(quad)) {
+                        storage.add(quad);
+                        report.addStored();
+                    }
+                }
+            });
+            for (Node graph : shapes)
+                checkShapes(warehouse, dataset.getNamedModel(graph.getURI()), graph.getURI());
+            dataset.commit();
+            shapes.forEach((Node graph) -> Connections.modified(warehouse, graph.getURI()));
+            stores.keySet().forEach((Node graph) -> Connections.modified(warehouse, graph.getURI()));
+            created.forEach((Node graph) -> notifyChange(warehouse, graph.getURI()));
+            LOG.debug("< [+] {} statements into {} stores", report.getStored(), stores.size());
+        } catch(Exception ex) {
+            dataset.abort();
+            throw ex;
+        } finally {
+            dataset.end();
+            lock.leaveCriticalSection();
+            Connections.release(warehouse);
+        }
+    }
+
+    /**
+     * Notifies the observers of a committed change.
+     * @param warehouse the warehouse name.
+     * @param graph the changed named graph URI; {@code null} for the default
+     * graph.
+     */
+    private void notifyChange(String warehouse, String graph) {
+        setChanged();
+        notifyObservers(new WarehouseChange(warehouse, graph));
+    }
+
+    /**
+     * Determines whether a graph name denotes the {@code -shacl} shape graph
+     * of a store.
+     * @param graph the graph name.
+     * @return {@code true} if the graph is a store shape graph; {@code false}
+     * otherwise.
+     */
+    private boolean isShapes(Node graph) {
+        return graph.isURI() && graph.getURI().startsWith("urn:") && graph.getURI().endsWith("-shacl");
+    }
+
+    /**
+     * Checks that imported shapes can be mapped to OSLC, as the OSLC model of
+     * the warehouse will do once they are committed.
+     * @param warehouse the warehouse name.
+     * @param shacl the imported shapes.
+     * @param uri the shape graph URI.
+     * @throws IllegalArgumentException if the shapes cannot be mapped.
+     */
+    private void checkShapes(String warehouse, Model shacl, String uri) {
+        Model scratch = ModelFactory.createDefaultModel();
+        try {
+            OslcShaclAdapter.addServiceProvider(shacl, OslcShaclAdapter.getStoreName(uri), scratch.createResource(),
+                    scratch, "urn:import", warehouse, new HashMap<>());
+        } catch (IllegalStateException ex) {
+            throw new IllegalArgumentException("Invalid shapes in " + uri + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Determines whether a graph name denotes a store, that is, a data graph
+     * having its {@code -shacl} shape graph.
+     * @param storage the warehouse storage.
+     * @param graph the graph name.
+     * @return {@code true} if the graph is a store data graph; {@code false}
+     * otherwise.
+     */
+    private boolean isStore(DatasetGraph storage, Node graph) {
+        String uri;
+        if (!graph.isURI())
+            return false;
+        uri = graph.getURI();
+        return uri.startsWith("urn:") && !uri.endsWith("-shacl")
+                && storage.containsGraph(NodeFactory.createURI(uri + "-shacl"));
+    }
+
+    /**
+     * Loads a payload into a named model through the TDB bulk loader, which
+     * builds the indexes in sorted batches instead of one statement at a
+     * time. The load runs outside transactions while the warehouse is in
+     * exclusive mode, so the payload is fully parsed first and a failure
+     * while loading may leave the named model partially loaded. Since the
+     * bulk loader bypasses the text index, the loaded model is indexed
+     * afterwards.
+     * @param warehouse the warehouse name.
+     * @param content the spooled payload.
+     * @param uri the target named model URI.
+     * @param report the import report to update.
+     */
+    private void bulkLoad(String warehouse, Spool content, String uri, ImportReport report) {
+        File triples;
+        boolean[] loaded = {false};
+        boolean[] created = {false};
+        Node graph = NodeFactory.createURI(uri);
+        try {
+            triples = getNTriples(content, report);
+        } catch (IOException ex) {
+            throw new RuntimeIOException(ex);
+        }
+        try {
+            Connections.exclusive(warehouse, (DatasetGraphTDB storage) -> {
+                long size = storage.getGraph(graph).size();
+                created[0] = storeModel(DatasetFactory.wrap(storage), uri, () -> {
+                    try (InputStream input = new BufferedInputStream(new FileInputStream(triples))) {
+                        BulkLoader.loadNamedGraph(storage, graph, input, false, false);
+                    } catch (IOException ex) {
+                        throw new RuntimeIOException(ex);
+                    }
+                });
+                storage.sync();
+                report.setStored(storage.getGraph(graph).size() - size);
+                loaded[0] = true;
+            });
+            if (loaded[0]) {
+                try {
+                    TextIndexes.index(Connections.acquire(warehouse), graph);
+                } finally {
+                    Connections.release(warehouse);
+                }
+            }
+        } finally {
+            if (loaded[0])
+                Connections.modified(warehouse, uri);
+            if (created[0])
+                notifyChange(warehouse, uri);
+            if (!triples.equals(content.getFile()) && !triples.delete())
+                LOG.warn("Could not delete {}", triples);
         }
+        LOG.debug("< [+] bulk loaded {} statements", report.getStored());
+    }
 
+    /**
+     * Gets a payload as an N-Triples file, the input of the TDB bulk loader.
+     * The payload is parsed completely, so syntax errors are reported before
+     * anything is loaded. Only the default graph of quad payloads is kept.
+     * @param content the spooled payload.
+     * @param report the import report accounting the parsed statements.
+     * @return the payload file itself if it is N-Triples; otherwise a new
+     * temporary N-Triples file.
+     * @throws IOException if the temporary file cannot be written.
+     */
+    private File getNTriples(Spool content, ImportReport report) throws IOException {
+        File triples;
+        if (Lang.NTRIPLES.equals(content.getLanguage())) {
+            content.parse(new TripleSink() {
+                @Override
+                public void triple(Triple triple) {
+                    report.addTriple();
+                }
+            });
+            return content.getFile();
+        }
+        triples = File.createTempFile("oslc4tdb-", ".nt");
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(triples))) {
+            StreamRDF writer = StreamRDFWriter.getWriterStream(output, Lang.NTRIPLES);
+            writer.start();
+            content.parse(new TripleSink() {
+                @Override
+                public void triple(Triple triple) {
+                    report.addTriple();
+                    writer.triple(triple);
+                }
+            });
+            writer.finish();
+        } catch (IOException | RuntimeException ex) {
+            if (!triples.delete())
+                LOG.warn("Could not delete {}", triples);
+            throw ex;
+        }
+        return triples;
     }
 
     public Model getModel(String warehouse, String uri) {
         Model buffer, model = null;
         LOG.debug("> ? model @ {}", uri);
-        Dataset dataset = Warehouses.get(warehouse);
+        Dataset dataset = Connections.acquire(warehouse);
         dataset.begin(ReadWrite.READ);
         try {
             if (uri == null)
@@ -357,11 +735,73 @@ public class TDBManager extends Observable implements RDFManager {
             if (model != null) {
                 model.leaveCriticalSection();
             }
-            TDBFactory.release(dataset);
+            Connections.release(warehouse);
         }
         return buffer;
     }
 
+    public boolean writeModel(String warehouse, String uri, Lang lang, OutputStream output) {
+        Model model;
+        boolean found;
+        LOG.debug("> ? streaming model @ {}", uri);
+        Dataset dataset = Connections.acquire(warehouse);
+        //the read transaction alone isolates the stream, so writers are not
+        //held back by slow clients
+        dataset.begin(ReadWrite.READ);
+        try {
+            if (uri == null)
+                model = dataset.getDefaultModel();
+            else
+                model = dataset.getNamedModel(uri);
+            found = !model.isEmpty();
+            if (found)
+                StreamOps.graphToStream(model.getGraph(), StreamRDFWriter.getWriterStream(output, lang));
+            dataset.commit();
+            LOG.debug("< streamed {}", found);
+        } catch(Exception ex) {
+            dataset.abort();
+            throw ex;
+        } finally {
+            dataset.end();
+            Connections.release(warehouse);
+        }
+        return found;
+    }
+
+    @Override
+    public long writeModels(String warehouse, OutputStream output) {
+        StreamRDF writer;
+        Iterator<Quad> quads;
+        long statements = 0;
+        List<Node> graphs = new ArrayList<>();
+        LOG.debug("> ? streaming warehouse {}", warehouse);
+        Dataset dataset = Connections.acquire(warehouse);
+        dataset.begin(ReadWrite.READ);
+        try {
+            dataset.asDatasetGraph().listGraphNodes().forEachRemaining(graphs::add);
+            graphs.sort(Comparator.comparing((Node graph) -> !graph.toString().endsWith("-shacl")));
+            writer = StreamRDFWriter.getWriterStream(output, Lang.NQUADS);
+            writer.start();
+            for (Node graph : graphs) {
+                quads = dataset.asDatasetGraph().find(graph, Node.ANY, Node.ANY, Node.ANY);
+                while (quads.hasNext()) {
+                    writer.quad(quads.next());
+                    statements++;
+                }
+            }
+            writer.finish();
+            dataset.commit();
+            LOG.debug("< streamed {} statements from {} graphs", statements, graphs.size());
+        } catch(Exception ex) {
+            dataset.abort();
+            throw ex;
+        } finally {
+            dataset.end();
+            Connections.release(warehouse);
+        }
+        return statements;
+    }
+
     /**
      * Adds a prefix declaration for the building query.
      * @param prefix the prefix to add.
@@ -385,18 +825,26 @@ public class TDBManager extends Observable implements RDFManager {
     }
 
     /**
-     * Breaks the where parameter into a sparql query.
+     * Breaks the where and select parameters into a sparql query.
+     * @param uri the graph name to query; {@code null} for the default graph.
      * @param where the where clause.
+     * @param projection the properties to be projected; all if empty.
      * @param source the source model.
-     * @return a map of properties to be matched.
+     * @return the sparql query building the filtered model.
      */
-    private String getQuery(String where, Model source) {
+    private String getQuery(String uri, String where, Set<String> projection, Model source) {
         int index;
         Pattern pattern;
         Matcher matcher;
         String fullTextVar;
         StringBuilder prefixes = new StringBuilder("");
-        StringBuilder query = new StringBuilder("\nSELECT ?s ?p ?o WHERE {\n ?s ?p ?o");
+        StringBuilder query = new StringBuilder("\nCONSTRUCT { ?s ?p ?o } WHERE {\n");
+        if (uri != null) {
+            query.append(" GRAPH <");
+            query.append(uri);
+            query.append("> {\n");
+        }
+        query.append(" ?s ?p ?o");
         if (where != null) {
             if (where.matches(WHERE_EXP_REGEX)) {
                 pattern = Pattern.compile(WHERE_TERM_REGEX);
@@ -430,6 +878,17 @@ public class TDBManager extends Observable implements RDFManager {
             } else
                 throw new IllegalArgumentException("Invalid where syntax, must match: " + WHERE_EXP_REGEX);
         }
+        if (!projection.isEmpty()) {
+            query.append(" .\n VALUES ?p {");
+            for (String property : projection) {
+                query.append(" <");
+                query.append(property);
+                query.append('>');
+            }
+            query.append(" }");
+        }
+        if (uri != null)
+            query.append("\n }");
         query.append("\n}");
         prefixes.append(query);
         where = prefixes.toString();
@@ -472,34 +931,39 @@ public class TDBManager extends Observable implements RDFManager {
 
     public Model getModel(String warehouse, String uri, String where, String select) {
         Query query;
-        RDFNode object;
-        Property property;
+        Model filtered, source = null;
         String queryString;
         Set<String> projection;
-        QuerySolution statement;
-        Resource subject, predicate;
-        Model filtered, source = getModel(warehouse, uri);
-        filtered = ModelFactory.createDefaultModel();
         LOG.debug("> WHERE [{}]", where);
         LOG.debug("> SELECT [{}]", select);
-        queryString = getQuery(where, source);
-        projection = getProjection(select, source);
-        LOG.debug("> {}/SPARQL\n\n{}\n", source.size(), queryString);
-        query = QueryFactory.create(queryString);
-        try (QueryExecution qexec = QueryExecutionFactory.create(query, source)) {
-            ResultSet results = qexec.execSelect() ;
-            while (results.hasNext()) {
-                statement = results.nextSolution();
-                subject = statement.getResource("s");
-                predicate = statement.getResource("p");
-                if (projection.isEmpty() || projection.contains(predicate.getURI())) {
-                    object = statement.get("o");
-                    property = ResourceFactory.createProperty(predicate.getURI());
-                    filtered.add(subject, property, object);
-                }
-            }
+        Dataset dataset = Connections.acquire(warehouse);
+        dataset.begin(ReadWrite.READ);
+        try {
+            if (uri == null)
+                source = dataset.getDefaultModel();
+            else
+                source = dataset.getNamedModel(uri);
+            source.enterCriticalSection(Lock.READ);
+            projection = getProjection(select, source);
+            queryString = getQuery(uri, where, projection, source);
+            LOG.debug("> SPARQL\n\n{}\n", queryString);
+            query = QueryFactory.create(queryString);
+            filtered = Queries.construct(query, dataset, getDeadline(warehouse), Connections.getQueryMaxTriples(warehouse));
             Models.importNamespacesPrefixes(source, filtered);
-            LOG.debug("< SPARQL/{}", results.getRowNumber());
+            dataset.commit();
+            LOG.debug("< SPARQL/{}", filtered.size());
+        } catch(QueryCancelledException ex) {
+            dataset.abort();
+            throw timedOut(warehouse, ex);
+        } catch(Exception ex) {
+            dataset.abort();
+            throw ex;
+        } finally {
+            dataset.end();
+            if (source != null) {
+                source.leaveCriticalSection();
+            }
+            Connections.release(warehouse);
         }
         return filtered;
     }
@@ -508,7 +972,7 @@ public class TDBManager extends Observable implements RDFManager {
         Resource finding;
         Model buffer, source = null;
         LOG.debug("> ? {} @ {}", uri, model);
-        Dataset dataset = Warehouses.get(warehouse);
+        Dataset dataset = Connections.acquire(warehouse);
         dataset.begin(ReadWrite.READ);
         try {
             if (model == null)
@@ -530,7 +994,7 @@ public class TDBManager extends Observable implements RDFManager {
             if (source != null) {
                 source.leaveCriticalSection();
             }
-            TDBFactory.release(dataset);
+            Connections.release(warehouse);
         }
         return buffer;
     }
@@ -538,7 +1002,7 @@ public class TDBManager extends Observable implements RDFManager {
     public void removeModel(String warehouse, String uri) {
         Lock lock;
         LOG.debug("> + model @ {}", uri);
-        Dataset dataset = Warehouses.get(warehouse);
+        Dataset dataset = Connections.acquire(warehouse);
         dataset.begin(ReadWrite.WRITE);
         lock = dataset.getLock();
         try {
@@ -547,9 +1011,10 @@ public class TDBManager extends Observable implements RDFManager {
                 dataset.getDefaultModel().removeAll();
             else
                 dataset.removeNamedModel(uri);
-            setChanged();
-            notifyObservers(warehouse);
             dataset.commit();
+            if (uri != null)
+                Connections.modified(warehouse, uri);
+            notifyChange(warehouse, uri);
             LOG.debug("< 0 statements");
         } catch(Exception ex) {
             dataset.abort();
@@ -557,7 +1022,7 @@ public class TDBManager extends Observable implements RDFManager {
         } finally {
             dataset.end();
             lock.leaveCriticalSection();
-            TDBFactory.release(dataset);
+            Connections.release(warehouse);
         }
     }
 
@@ -565,7 +1030,7 @@ public class TDBManager extends Observable implements RDFManager {
     public void setResource(String warehouse, Resource resource, String model) {
         Model target = null;
 
-        Dataset dataset = Warehouses.get(warehouse);
+        Dataset dataset = Connections.acquire(warehouse);
         ShaclValidator validator = new ShaclValidator(false);
         Model validationContext = ModelFactory.createDefaultModel();
         model = Models.getStoreURN(model);
@@ -586,6 +1051,7 @@ public class TDBManager extends Observable implements RDFManager {
             target.removeAll(resource, null, null);
             target.add(resource.listProperties());
             dataset.commit();
+            Connections.modified(warehouse, model);
             LOG.debug("< {} saved @ {}", resource.getURI(), model);
         } catch(RuntimeException ex) {
             dataset.abort();
@@ -595,36 +1061,196 @@ public class TDBManager extends Observable implements RDFManager {
             if (target != null) {
                 target.leaveCriticalSection();
             }
-            TDBFactory.release(dataset);
+            Connections.release(warehouse);
         }
     }
 
     @Override
     public Model search(String warehouse, QueryCriteria criteria, String store, String base) {
+        long version;
         Model buffer;
-        Dataset dataset = Warehouses.get(warehouse);
-        String query = criteria.getSparqlQuery(base, store);
+        List<Object> key;
+        SearchResult result;
+        Dataset dataset = Connections.acquire(warehouse);
+        try {
+            version = Connections.getVersion(warehouse, Models.getStoreURN(store));
+            key = Arrays.asList(warehouse, version, criteria.getSparqlQuery(base, store),
+                    criteria.isPaged() ? criteria.getPageQuery(store) : null);
+            if ((result = results.get(key)) == null) {
+                result = search(warehouse, criteria, store, base, version, dataset);
+                results.put(key, result);
+            } else
+                LOG.debug("< cached search @ {}", store);
+        } finally {
+            Connections.release(warehouse);
+        }
+        criteria.setNextPageToken(result.nextPageToken);
+        buffer = ModelFactory.createDefaultModel();
+        buffer.setNsPrefixes(result.model);
+        buffer.add(result.model);
+        return buffer;
+    }
+
+    /**
+     * Searches the resources matching a criteria within a read transaction.
+     * @param warehouse the warehouse name.
+     * @param criteria the search criteria.
+     * @param store the store to search in.
+     * @param base the URL of the OSLC queryBase resource.
+     * @param version the store version, read before the read transaction.
+     * @param dataset the acquired dataset.
+     * @return the search result.
+     */
+    private SearchResult search(String warehouse, QueryCriteria criteria, String store, String base, long version, Dataset dataset) {
+        long total;
+        Model buffer;
+        Lock lock = null;
+        List<String> members = null;
+        long deadline = getDeadline(warehouse);
         dataset.begin(ReadWrite.READ);
         try {
-            dataset.getLock().enterCriticalSection(Lock.READ);
-            buffer = OSLCModel.search(query, base, dataset);
-            dataset.getLock().leaveCriticalSection();
+            lock = dataset.getLock();
+            lock.enterCriticalSection(Lock.READ);
+            if (criteria.isPaged())
+                members = getPage(criteria, store, dataset, deadline);
+            total = getTotalCount(warehouse, criteria, store, version, dataset, deadline);
+            buffer = OSLCModel.search(criteria.getSparqlQuery(base, members, store), base, total, dataset,
+                    deadline, Connections.getQueryMaxTriples(warehouse));
             dataset.commit();
             LOG.debug("< {} statements", buffer.size());
+        } catch(QueryCancelledException ex) {
+            dataset.abort();
+            throw timedOut(warehouse, ex);
         } catch(RuntimeException ex) {
             dataset.abort();
             throw ex;
         } finally {
+            if (lock != null)
+                lock.leaveCriticalSection();
             dataset.end();
-            TDBFactory.release(dataset);
         }
-        return buffer;
+        return new SearchResult(buffer, criteria.getNextPageToken());
+    }
+
+    /**
+     * Gets the time at which the queries of a request on a warehouse are
+     * cancelled, according to the warehouse query timeout.
+     * @param warehouse the acquired warehouse name.
+     * @return the deadline in milliseconds; zero for no deadline.
+     */
+    private static long getDeadline(String warehouse) {
+        long timeout = Connections.getQueryTimeout(warehouse);
+        return timeout > 0 ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeout) : 0;
+    }
+
+    /**
+     * Reports a query cancelled for exceeding the warehouse query timeout.
+     * @param warehouse the warehouse name.
+     * @param ex the cancellation.
+     * @return the exception to throw.
+     */
+    private static QueryLimitException timedOut(String warehouse, QueryCancelledException ex) {
+        return new QueryLimitException("The query exceeded the " + Connections.getQueryTimeout(warehouse)
+                + " seconds allowed in the " + warehouse
+                + " warehouse; narrow it down with oslc.where or page it with oslc.paging.", ex);
+    }
+
+    /**
+     * Gets the number of searches answered from the results cache.
+     * @return the number of search cache hits.
+     */
+    public long getSearchCacheHits() {
+        return results.getHits();
+    }
+
+    /**
+     * Gets the number of searches that had to be run against the store.
+     * @return the number of search cache misses.
+     */
+    public long getSearchCacheMisses() {
+        return results.getMisses();
+    }
+
+    /**
+     * Counts the resources matching a criteria, across all pages. Counts are
+     * cached by store version, so they are computed again only after the
+     * store is modified. Must be called within a read transaction.
+     * @param warehouse the warehouse name.
+     * @param criteria the search criteria.
+     * @param store the store to search in.
+     * @param version the store version, read before the read transaction.
+     * @param dataset the open dataset.
+     * @param deadline the time, in milliseconds, at which counting is
+     * cancelled; zero for no deadline.
+     * @return the number of matching resources.
+     */
+    private long getTotalCount(String warehouse, QueryCriteria criteria, String store, long version, Dataset dataset,
+            long deadline) {
+        Long total;
+        Query query = criteria.getCountQuery(store);
+        List<Object> key = Arrays.asList(warehouse, version, query);
+        if ((total = counts.get(key)) == null) {
+            try (QueryExecution execution = Queries.create(query, dataset, deadline)) {
+                total = execution.execSelect().next().getLiteral("count").getLong();
+            }
+            counts.put(key, total);
+            LOG.debug("< counted {} resources @ {}", total, store);
+        }
+        return total;
+    }
+
+    /**
+     * Selects the resources of the page requested by a criteria, and sets
+     * the criteria continuation token of the following page. Full-text
+     * searches rank only the page hits first, and all of them only if the
+     * page comes out short. Must be called within a read transaction.
+     * @param criteria the paged search criteria.
+     * @param store the store to search in.
+     * @param dataset the open dataset.
+     * @param deadline the time, in milliseconds, at which the selection is
+     * cancelled; zero for no deadline.
+     * @return the URIs of the page resources, in order.
+     */
+    private List<String> getPage(QueryCriteria criteria, String store, Dataset dataset, long deadline) {
+        int hits = criteria.getPageHits();
+        List<String> members = getPage(criteria, criteria.getPageQuery(hits, store), dataset, deadline);
+        //hits of resources filtered out by other terms may have left it short
+        if (criteria.getNextPageToken() == null && hits < Environment.QUERY_TEXT_MAX_HITS)
+            members = getPage(criteria, criteria.getPageQuery(Environment.QUERY_TEXT_MAX_HITS, store),
+                    dataset, deadline);
+        return members;
+    }
+
+    /**
+     * Selects the resources of a page, and sets the criteria continuation
+     * token of the following page. Must be called within a read transaction.
+     * @param criteria the paged search criteria.
+     * @param query the page selection query.
+     * @param dataset the open dataset.
+     * @param deadline the time, in milliseconds, at which the selection is
+     * cancelled; zero for no deadline.
+     * @return the URIs of the page resources, in order.
+     */
+    private List<String> getPage(QueryCriteria criteria, Query query, Dataset dataset, long deadline) {
+        ResultSet rows;
+        QuerySolution row = null;
+        List<String> members = new ArrayList<>();
+        try (QueryExecution execution = Queries.create(query, dataset, deadline)) {
+            rows = execution.execSelect();
+            while (rows.hasNext() && members.size() < criteria.getPageSize()) {
+                row = rows.next();
+                members.add(row.getResource("M").getURI());
+            }
+            criteria.setNextPageToken(rows.hasNext() ? criteria.getPageToken(row) : null);
+        }
+        LOG.debug("< page of {} resources, last {}", members.size(), criteria.getNextPageToken() == null);
+        return members;
     }
 
     @Override
     public void removeResource(String warehouse, Resource resource, String model) {
         Model target = null;
-        Dataset dataset = Warehouses.get(warehouse);
+        Dataset dataset = Connections.acquire(warehouse);
         model = Models.getStoreURN(model);
         LOG.debug("> - {} @ {}", resource.getURI(), model);
         dataset.begin(ReadWrite.WRITE);
@@ -634,6 +1260,7 @@ public class TDBManager extends Observable implements RDFManager {
             target.removeAll(resource, null, null);
             target.removeAll(null, null, resource);
             dataset.commit();
+            Connections.modified(warehouse, model);
             LOG.debug("< {} removed @ {}", resource.getURI(), model);
         } catch(RuntimeException ex) {
             dataset.abort();
@@ -643,7 +1270,7 @@ public class TDBManager extends Observable implements RDFManager {
             if (target != null) {
                 target.leaveCriticalSection();
             }
-            TDBFactory.release(dataset);
+            Connections.release(warehouse);
         }
     }
 
@@ -0,0 +1,48 @@
+package com.ld4mbse.oslc4tdb.services;
+
+/**
+ * A change of a warehouse graph, as notified by {@link TDBManager} to its
+ * observers, so they can tell shapes changes apart from data changes.
+ * @author rherrera
+ */
+public class WarehouseChange {
+    /**
+     * The warehouse name.
+     */
+    private final String warehouse;
+    /**
+     * The changed named graph URI; {@code null} for the default graph.
+     */
+    private final String graph;
+    /**
+     * Constructs an instance specifying the changed graph.
+     * @param warehouse the warehouse name.
+     * @param graph the changed named graph URI; {@code null} for the default
+     * graph.
+     */
+    WarehouseChange(String warehouse, String graph) {
+        this.warehouse = warehouse;
+        this.graph = graph;
+    }
+    /**
+     * Gets the warehouse name.
+     * @return the warehouse name.
+     */
+    public String getWarehouse() {
+        return warehouse;
+    }
+    /**
+     * Gets the changed named graph URI.
+     * @return the changed named graph URI; {@code null} for the default
+     * graph.
+     */
+    public String getGraph() {
+        return graph;
+    }
+
+    @Override
+    public String toString() {
+        return warehouse;
+    }
+
+}
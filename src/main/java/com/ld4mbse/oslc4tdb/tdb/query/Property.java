@@ -92,43 +92,17 @@ public class Property<E extends Property> {
         return objectVariable(subjectVariable, property);
     }
     /**
-     * Formats this property to be part of a SPARQL query projection.
-     * @param resource the SPARQL variable to which this term belongs to.
-     * @param query the target query buffer.
+     * Gets the RDF property of this instance.
+     * @return the RDF property, a prefixed name or the wildcard.
      */
-    public void formatProjection(String resource, StringBuilder query) {
-        String objectVariable = getObjectVariable(resource);
-        if (query.indexOf(objectVariable) < 0) {
-            query.append(". ");
-            query.append(resource);
-            query.append(' ');
-            query.append(getPredicate(resource));
-            query.append(' ');
-            query.append(objectVariable);
-        }
-        properties.forEach((nestedProperty) -> {
-            nestedProperty.formatProjection(objectVariable, query);
-        });
+    public String getProperty() {
+        return property;
     }
     /**
-     * Formats this property to be part of a SPARQL query selection.
-     * @param resource the SPARQL variable to which this term belongs to.
-     * @param query the target query buffer.
+     * Gets the nested properties of this property.
+     * @return the nested properties; empty if none.
      */
-    public void formatSelection(String resource, StringBuilder query) {
-        int whereIndex = query.indexOf("WHERE");
-        String objectVariable = getObjectVariable(resource);
-        if (query.indexOf(objectVariable, whereIndex) < 0) {
-            query.append(". OPTIONAL {");
-            query.append(resource);
-            query.append(' ');
-            query.append(getPredicate(resource));
-            query.append(' ');
-            query.append(objectVariable);
-            query.append('}');
-        }
-        properties.forEach((nestedProperty) -> {
-            nestedProperty.formatSelection(objectVariable, query);
-        });
+    public List<E> getProperties() {
+        return properties;
     }
 }
\ No newline at end of file
@@ -0,0 +1,340 @@
+package com.ld4mbse.oslc4tdb.tdb.query;
+
+import com.ld4mbse.oslc4tdb.util.TextIndexes;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.PrefixMap;
+import org.apache.jena.sparql.ARQConstants;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.expr.E_Equals;
+import org.apache.jena.sparql.expr.E_GreaterThan;
+import org.apache.jena.sparql.expr.E_GreaterThanOrEqual;
+import org.apache.jena.sparql.expr.E_LessThan;
+import org.apache.jena.sparql.expr.E_LessThanOrEqual;
+import org.apache.jena.sparql.expr.E_NotEquals;
+import org.apache.jena.sparql.expr.E_NotExists;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprVar;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.expr.aggregate.AggregatorFactory;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementFilter;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementOptional;
+import org.apache.jena.sparql.syntax.ElementPathBlock;
+import org.apache.jena.sparql.syntax.ElementSubQuery;
+import org.apache.jena.sparql.util.NodeFactoryExtra;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * Builds the graph pattern and template of a {@link QueryCriteria} query as
+ * Jena syntax elements, so queries are executed without being serialized
+ * and parsed again. An instance builds a single query.
+ * @author rherrera
+ */
+class QueryBuilder {
+    /**
+     * The prefixes to resolve prefixed names.
+     */
+    private final PrefixMap prefixes;
+    /**
+     * The graph pattern being built.
+     */
+    private final ElementGroup pattern;
+    /**
+     * The variables already bound by the graph pattern.
+     */
+    private final Set<Var> bound;
+    /**
+     * Whether the graph pattern constrains the {@code rdf:type} of the
+     * matching resources.
+     */
+    private boolean typed;
+    /**
+     * The number of collection cells in the graph pattern.
+     */
+    private int cells;
+    /**
+     * The number of {@code VALUES} blocks leading the graph pattern.
+     */
+    private int tables;
+    /**
+     * Constructs an instance specifying the prefixes to use.
+     * @param prefixes the prefixes to resolve prefixed names.
+     */
+    QueryBuilder(PrefixMap prefixes) {
+        this.prefixes = prefixes;
+        this.pattern = new ElementGroup();
+        this.bound = new HashSet<>();
+    }
+    /**
+     * Parses a {@code oslc.where} value or a property name into an RDF term.
+     * @param term an IRI reference, prefixed name or literal.
+     * @return the RDF term.
+     * @throws IllegalArgumentException if the term is not valid or uses an
+     * unknown prefix.
+     */
+    Node getNode(String term) {
+        try {
+            return NodeFactoryExtra.parseNode(term, prefixes);
+        } catch (RiotException ex) {
+            throw new IllegalArgumentException("Unknow term: " + term, ex);
+        }
+    }
+    /**
+     * Gets the predicate to use, in a triple pattern, for a property with a
+     * given subject variable: a variable for the wildcard property.
+     * @param subject the subject variable.
+     * @param property the property.
+     * @return the predicate.
+     */
+    Node getPredicate(Var subject, Property<?> property) {
+        String predicate = property.getPredicate("?" + subject.getVarName());
+        return predicate.startsWith("?") ? Var.alloc(predicate.substring(1)) : getNode(predicate);
+    }
+    /**
+     * Gets the object variable to use, in a triple pattern, for a property
+     * with a given subject variable.
+     * @param subject the subject variable.
+     * @param property the property.
+     * @return the object variable.
+     */
+    Var getObject(Var subject, Property<?> property) {
+        return Var.alloc(property.getObjectVariable("?" + subject.getVarName()).substring(1));
+    }
+    /**
+     * Matches the resources of a type, or any resource if no type is given.
+     * @param subject the resource variable.
+     * @param type the type URI; {@code null} for any resource.
+     */
+    void type(Var subject, String type) {
+        Property<?> wildcard = new Property<>(Property.WILDCARD);
+        if (type == null)
+            triple(pattern, subject, getPredicate(subject, wildcard), getObject(subject, wildcard));
+        else
+            triple(pattern, subject, RDF.type.asNode(), getNode("<" + type + ">"));
+    }
+    /**
+     * Matches the resources satisfying a condition. Equalities become
+     * triple patterns with a bound object and {@code in} tests become a
+     * {@code VALUES} block, so both are answered by index lookups; only the
+     * other comparisons need a filter. The nested conditions of a scoped
+     * condition apply to the objects of its property.
+     * @param subject the resource variable.
+     * @param condition the condition.
+     */
+    void condition(Var subject, Condition condition) {
+        Node value;
+        Var object = getObject(subject, condition);
+        Node predicate = getPredicate(subject, condition);
+        String operator = condition.getOperator();
+        String[] values = condition.getValues();
+        if (condition.isScoped()) {
+            required(subject, predicate, object);
+            for (Condition nested : condition.getProperties())
+                condition(object, nested);
+        } else if ("=".equals(operator) || ("in".equals(operator) && values.length == 1)) {
+            triple(pattern, subject, predicate, getNode(values[0]));
+        } else if ("in".equals(operator)) {
+            values(object, values);
+            required(subject, predicate, object);
+        } else {
+            value = getNode(values[0]);
+            required(subject, predicate, object);
+            filter(compare(operator, new ExprVar(object), NodeValue.makeNode(value)));
+        }
+    }
+    /**
+     * Binds, if present, the values of a property and its nested properties.
+     * @param subject the resource variable.
+     * @param property the property.
+     */
+    void optional(Var subject, Property<?> property) {
+        ElementGroup group;
+        Var object = getObject(subject, property);
+        if (bound.add(object)) {
+            group = new ElementGroup();
+            triple(group, subject, getPredicate(subject, property), object);
+            pattern.addElement(new ElementOptional(group));
+        }
+        for (Property<?> nested : property.getProperties())
+            optional(object, nested);
+    }
+    /**
+     * Binds the value of a property every resource has exactly once, with a
+     * plain join instead of an optional pattern, and binds, if present, the
+     * values of its nested properties.
+     * @param subject the resource variable.
+     * @param property the property.
+     */
+    void join(Var subject, Property<?> property) {
+        Var object = getObject(subject, property);
+        required(subject, getPredicate(subject, property), object);
+        for (Property<?> nested : property.getProperties())
+            optional(object, nested);
+    }
+    /**
+     * Matches the resources having string literals that match a Lucene query
+     * on the text index, binding their best relevance score.
+     * @param subject the resource variable.
+     * @param score the score variable.
+     * @param text the Lucene query.
+     * @param limit the maximum number of text index hits.
+     */
+    void search(Var subject, Var score, String text, int limit) {
+        Var hit = Var.alloc(score.getVarName() + "H");
+        ElementGroup group = new ElementGroup();
+        ElementPathBlock block = new ElementPathBlock();
+        ElementPathBlock arguments = new ElementPathBlock();
+        Node object = list(arguments, NodeFactory.createLiteral(text), NodeValue.makeInteger(limit).asNode());
+        Query hits = new Query();
+        block.addTriple(new Triple(list(block, subject, hit), TextIndexes.QUERY, object));
+        arguments.getPattern().forEach(block::addTriplePath);
+        group.addElement(block);
+        hits.setQuerySelectType();
+        hits.addResultVar(subject);
+        hits.addResultVar(score, hits.allocAggregate(AggregatorFactory.createMax(false, new ExprVar(hit))));
+        hits.addGroupBy(subject);
+        hits.setQueryPattern(group);
+        pattern.addElement(new ElementSubQuery(hits));
+    }
+    /**
+     * Excludes the typed resources, unless the pattern already constrains
+     * the resources type.
+     * @param subject the resource variable.
+     */
+    void untyped(Var subject) {
+        ElementGroup group;
+        if (!typed) {
+            group = new ElementGroup();
+            triple(group, subject, RDF.type.asNode(), getObject(subject, new Property<>(Property.RDF_TYPE)));
+            pattern.addElement(new ElementFilter(new E_NotExists(group)));
+        }
+    }
+    /**
+     * Adds a filter to the pattern.
+     * @param expression the filter expression.
+     */
+    void filter(Expr expression) {
+        pattern.addElement(new ElementFilter(expression));
+    }
+    /**
+     * Adds to a template the triples of a projected property and its nested
+     * properties.
+     * @param template the template triples.
+     * @param projected the object variables already in the template.
+     * @param subject the resource variable.
+     * @param property the projected property.
+     */
+    void project(BasicPattern template, Set<Var> projected, Var subject, Property<?> property) {
+        Var object = getObject(subject, property);
+        if (projected.add(object))
+            template.add(new Triple(subject, getPredicate(subject, property), object));
+        for (Property<?> nested : property.getProperties())
+            project(template, projected, object, nested);
+    }
+    /**
+     * Gets the built graph pattern.
+     * @return the built graph pattern.
+     */
+    ElementGroup getPattern() {
+        return pattern;
+    }
+    /**
+     * Adds a triple pattern binding the object variable of a property,
+     * unless it is already bound.
+     * @param subject the subject variable.
+     * @param predicate the predicate.
+     * @param object the object variable.
+     */
+    private void required(Var subject, Node predicate, Var object) {
+        if (bound.add(object))
+            triple(pattern, subject, predicate, object);
+    }
+    /**
+     * Adds a {@code VALUES} block for a variable. Blocks go before any other
+     * element, so the pattern is evaluated starting from their values.
+     * @param variable the variable.
+     * @param values the values, as written in {@code oslc.where}.
+     */
+    private void values(Var variable, String[] values) {
+        ElementData data = new ElementData();
+        data.add(variable);
+        for (String value : values)
+            data.add(BindingFactory.binding(variable, getNode(value)));
+        pattern.getElements().add(tables++, data);
+    }
+    /**
+     * Builds a comparison expression.
+     * @param operator the {@code oslc.where} comparison operator.
+     * @param left the left operand.
+     * @param right the right operand.
+     * @return the comparison expression.
+     */
+    private static Expr compare(String operator, Expr left, Expr right) {
+        switch (operator) {
+            case "!=": return new E_NotEquals(left, right);
+            case "<": return new E_LessThan(left, right);
+            case ">": return new E_GreaterThan(left, right);
+            case "<=": return new E_LessThanOrEqual(left, right);
+            case ">=": return new E_GreaterThanOrEqual(left, right);
+            default: return new E_Equals(left, right);
+        }
+    }
+    /**
+     * Adds to a block the triples of an RDF collection, as the SPARQL parser
+     * does for {@code ( ... )}.
+     * @param block the target block.
+     * @param items the collection items.
+     * @return the collection head.
+     */
+    private Node list(ElementPathBlock block, Node... items) {
+        Var[] cells = new Var[items.length];
+        for (int i = 0; i < items.length; i++)
+            cells[i] = Var.alloc(ARQConstants.allocVarAnonMarker + "L" + this.cells++);
+        for (int i = 0; i < items.length; i++) {
+            block.addTriple(new Triple(cells[i], RDF.first.asNode(), items[i]));
+            block.addTriple(new Triple(cells[i], RDF.rest.asNode(), i + 1 < items.length ? cells[i + 1] : RDF.nil.asNode()));
+        }
+        return cells[0];
+    }
+    /**
+     * Adds a triple pattern to a group, joining it to the preceding block of
+     * triples as the SPARQL parser does. Filters apply to the whole group
+     * wherever they are, so trailing ones do not split the block and TDB
+     * can order all its triples by selectivity.
+     * @param group the target group.
+     * @param subject the subject.
+     * @param predicate the predicate.
+     * @param object the object.
+     */
+    private void triple(ElementGroup group, Node subject, Node predicate, Node object) {
+        Element last = null;
+        ElementPathBlock block;
+        List<Element> elements = group.getElements();
+        if (RDF.type.asNode().equals(predicate))
+            typed = true;
+        for (int i = elements.size() - 1; i >= 0; i--) {
+            last = elements.get(i);
+            if (!(last instanceof ElementFilter))
+                break;
+        }
+        if (last instanceof ElementPathBlock)
+            block = (ElementPathBlock) last;
+        else {
+            block = new ElementPathBlock();
+            group.addElement(block);
+        }
+        block.addTriple(new Triple(subject, predicate, object));
+    }
+
+}
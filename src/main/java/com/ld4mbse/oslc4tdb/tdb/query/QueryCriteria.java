@@ -1,16 +1,60 @@
 package com.ld4mbse.oslc4tdb.tdb.query;
 
+import com.ld4mbse.oslc4tdb.model.Environment;
+import com.ld4mbse.oslc4tdb.util.LRUCache;
 import com.ld4mbse.oslc4tdb.util.Models;
-import com.ld4mbse.oslc4tdb.util.Queries;
+import com.ld4mbse.oslc4tdb.util.TextIndexes;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.function.Supplier;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.SortCondition;
+import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.out.NodeFmtLib;
+import org.apache.jena.riot.system.PrefixMap;
+import org.apache.jena.riot.system.PrefixMapFactory;
+import org.apache.jena.shared.impl.PrefixMappingImpl;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.expr.E_Bound;
+import org.apache.jena.sparql.expr.E_Equals;
+import org.apache.jena.sparql.expr.E_Function;
+import org.apache.jena.sparql.expr.E_GreaterThan;
+import org.apache.jena.sparql.expr.E_IsIRI;
+import org.apache.jena.sparql.expr.E_LessThan;
+import org.apache.jena.sparql.expr.E_LogicalAnd;
+import org.apache.jena.sparql.expr.E_LogicalNot;
+import org.apache.jena.sparql.expr.E_LogicalOr;
+import org.apache.jena.sparql.expr.E_Str;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.expr.ExprVar;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.expr.aggregate.AggregatorFactory;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementFilter;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementSubQuery;
+import org.apache.jena.sparql.syntax.Template;
+import org.apache.jena.sparql.syntax.syntaxtransform.QueryTransformOps;
+import org.apache.jena.sparql.util.NodeFactoryExtra;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
 import org.eclipse.lyo.oslc4j.core.model.OslcConstants;
 import org.eclipse.lyo.oslc4j.core.model.QueryCapability;
 import org.slf4j.Logger;
@@ -18,8 +62,9 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Encapsulates criteria to execute a {@link QueryCapability} search.
- * Contains the logic to parse {@code oslc.where}, {@code oslc.select} and
- * {@code oslc.prefix} sintaxes.
+ * Parses the {@code oslc.where}, {@code oslc.select}, {@code oslc.orderBy},
+ * {@code oslc.searchTerms} and {@code oslc.prefix} sintaxes by means of a
+ * {@link QueryParser}.
  * @author rherrera
  */
 public class QueryCriteria {
@@ -28,86 +73,32 @@ public class QueryCriteria {
      */
     private static final Logger LOG = LoggerFactory.getLogger(QueryCriteria.class);
     /**
-     * Regex to denote a regular letter.
+     * The variable matching the resources to retrieve.
      */
-    private static final String LETTER = "A-Za-z";
+    private static final Var MATCH = Var.alloc("M");
     /**
-     * Regex to denote a digit.
+     * The variable holding the relevance score of the matching resources.
      */
-    private static final String DIGIT = "0-9";
+    private static final Var SCORE = Var.alloc("oslcSC");
     /**
-     * Regex to denote a decimal.
-     * @see https://www.w3.org/TR/xmlschema-2/
+     * The variable holding the number of matching resources.
      */
-    private static final String DECIMAL = "[+-]?[" + DIGIT + "]+(\\.[" + DIGIT + "]+)?([eE][+-]?[" + DIGIT + "]+)?";
+    private static final Var COUNT = Var.alloc("count");
     /**
-     * Regex to denote an alphanumeric character.
+     * Prefix of the page query variables holding the sort values.
      */
-    private static final String ALPHANUMERIC = LETTER + DIGIT;
+    private static final String PAGE_KEY = "S";
     /**
-     * @see https://www.w3.org/TR/rdf-sparql-query/#rLANGTAG
+     * Maximum number of built queries kept by a criteria and its copies.
      */
-    private static final String LANGTAG = "@[" + LETTER + "](-?[" + ALPHANUMERIC + "])*";
+    private static final int PREPARED_SIZE = 16;
     /**
-     * @see https://www.w3.org/TR/rdf-sparql-query/#rPN_PREFIX
+     * The zero the {@link SortOrder} comparisons are tested against.
      */
-    private static final String PN_PREFIX = "[" + LETTER + "](\\.?[" + ALPHANUMERIC + "_-])*";
-    /**
-     * @see https://www.w3.org/TR/rdf-sparql-query/#rIRI_REF
-     */
-    private static final String IRI_REF = "<(([^<>\"{}\\|`\\\\])+)>";
-    /**
-     * @see http://open-services.net/bin/view/Main/OslcCoreSpecification#oslc_prefix
-     */
-    private static final String PREFIX_DEF = "(" + PN_PREFIX + ")=" + IRI_REF;
-    /**
-     * Valid {@code PrefixedName} regex.
-     * @see http://www.w3.org/TR/rdf-sparql-query/#rPrefixedName
-     */
-    private static final String PREFIXED_NAME = PN_PREFIX + ":[" + ALPHANUMERIC + "_](\\.?[" + ALPHANUMERIC +"_-])*";
-    /**
-     * Valid {@code identifier_wc} regex.
-     * @see http://open-services.net/bin/view/Main/OSLCCoreSpecQuery#oslc_where
-     */
-    private static final String IDENTIFIER = "\\*|" + PREFIXED_NAME;
-    /**
-     * Valid operators for comparison regex.
-     * @see http://open-services.net/bin/view/Main/OSLCCoreSpecQuery#oslc_where
-     */
-    private static final String OPERATOR = "(([!<>]?=)|[<>])";
-    /**
-     * An escaped string regex.
-     */
-    private static final String STRING_ESC = "\".*?\"";
-    /**
-     * Valid VALUE regex.
-     * @see http://open-services.net/bin/view/Main/OSLCCoreSpecQuery#oslc_where
-     */
-    private static final String VALUE = "(" + IRI_REF + "|true|false|" + DECIMAL + "|" + STRING_ESC + "(" + LANGTAG + "|\\^\\^" + PREFIXED_NAME + ")?)";
-    /**
-     * A single comparison expression regex.
-     */
-    private static final String COMPARISION = OPERATOR + VALUE;
-    /**
-     * A IN expression regex.
-     */
-    private static final String IN = " (in) \\[((.+?))\\]";
-    /**
-     * A SCOPED TERM expression regex.
-     */
-    private static final String SCOPED_TERM = "\\{((.+))\\}";
-    /**
-     * A single TERM regex.
-     */
-    private static final String TERM = "(" + IDENTIFIER + ")((" + COMPARISION + ")|(" + IN + ")|(" + SCOPED_TERM + "))";
-    /**
-     * A single PROPERTY regex.
-     */
-    private static final String PROPERTY = "(" + IDENTIFIER + ")((" + SCOPED_TERM + ")?)";
-    /**
-     * A single SORT_TERM regex.
-     */
-    private static final String SORT_TERM = "((([+-])(" + IDENTIFIER + "))|((" + IDENTIFIER + ")(" + SCOPED_TERM + ")))";
+    private static final NodeValue ZERO = NodeValue.makeInteger(0);
+    static {
+        SortOrder.register();
+    }
     /**
      * Creates an instance specifying the target resource type to retrieve.
      * @param type target resource type to retrieve.
@@ -136,6 +127,37 @@ public class QueryCriteria {
      * Sort keys.
      */
     private List<SortKey> sortKeys;
+    /**
+     * Full-text search terms.
+     */
+    private List<String> searchTerms;
+    /**
+     * The shape of the target resource type; {@code null} if unknown.
+     */
+    private Shape shape;
+    /**
+     * Maximum number of resources per page; zero if not paged.
+     */
+    private int pageSize;
+    /**
+     * Sort values after which the requested page starts, followed by the
+     * last resource of the previous page; {@code null} for the first page.
+     */
+    private Node[] pageKey;
+    /**
+     * Number of resources in the pages before the requested one.
+     */
+    private long offset;
+    /**
+     * Continuation token of the page following the searched one.
+     */
+    private String nextPageToken;
+    /**
+     * Queries already built for this criteria, by kind and target; shared
+     * with the {@link #copy() copies} of this instance. Only their shallow
+     * copies are handed out, so each execution gets its own query.
+     */
+    private LRUCache<List<Object>, Query> prepared;
     /**
      * Constructs an instance specifying the target resource type to retrieve.
      * @param type target resource type URL to retrieve.
@@ -145,8 +167,47 @@ public class QueryCriteria {
         this.sortKeys = Collections.EMPTY_LIST;
         this.prefixes = Collections.EMPTY_MAP;
         this.conditions = Collections.EMPTY_LIST;
+        this.searchTerms = Collections.EMPTY_LIST;
+        this.prepared = new LRUCache<>(PREPARED_SIZE);
         this.type = type;
     }
+    /**
+     * Creates an unpaged criteria sharing the parsed parameters and the
+     * built queries of this instance, so a criteria can be parsed once and
+     * searched many times, even concurrently.
+     * @return the new criteria.
+     */
+    public QueryCriteria copy() {
+        QueryCriteria copy = new QueryCriteria(type);
+        copy.prefixes = prefixes;
+        copy.properties = properties;
+        copy.conditions = conditions;
+        copy.sortKeys = sortKeys;
+        copy.searchTerms = searchTerms;
+        copy.shape = shape;
+        copy.prepared = prepared;
+        return copy;
+    }
+    /**
+     * Sets the shape of the target resource type, to plan the queries with:
+     * properties occurring exactly once are joined instead of optionally
+     * matched, and properties the shape does not declare are rejected.
+     * @param shape the type shape; {@code null} if unknown.
+     */
+    public void setShape(Shape shape) {
+        this.shape = shape;
+        this.prepared = new LRUCache<>(PREPARED_SIZE);
+    }
+    /**
+     * {@link #setShape(com.ld4mbse.oslc4tdb.tdb.query.Shape) Sets the shape}
+     * of the target resource type.
+     * @param shape the type shape; {@code null} if unknown.
+     * @return this instance.
+     */
+    public QueryCriteria shape(Shape shape) {
+        setShape(shape);
+        return this;
+    }
     /**
      * Sets the extra prefixes to use in the query.
      * @param prefixes the extra prefixes to use in the query.
@@ -154,6 +215,7 @@ public class QueryCriteria {
      */
     public void setPrefixes(Map<String, String> prefixes) {
         this.prefixes = Objects.requireNonNull(prefixes, "prefixes cannot be null");
+        this.prepared = new LRUCache<>(PREPARED_SIZE);
     }
     /**
      * Parses the {@code oslc.prefix} parameter to
@@ -164,23 +226,10 @@ public class QueryCriteria {
      * formed.
      */
     public QueryCriteria prefixes(String prefixParameter) {
-        Pattern pattern;
-        Matcher matcher;
-        Map<String, String> prfxs;
         if (prefixParameter == null || prefixParameter.isEmpty())
-            prfxs = Collections.EMPTY_MAP;
-        else if (!prefixParameter.matches(PREFIX_DEF + "(," + PREFIX_DEF + ")*"))
-            throw new IllegalArgumentException("Bad formed oslc.prefix: " + prefixParameter);
-        else {
-            prfxs = new HashMap<>();
-            pattern = Pattern.compile(",?" + PREFIX_DEF);
-            matcher = pattern.matcher(prefixParameter);
-            while(matcher.find()) {
-                prfxs.put(matcher.group(3), matcher.group(1));
-                LOG.trace("[+] PREFIX <{}>={}", matcher.group(3), matcher.group(1));
-            }
-        }
-        setPrefixes(prfxs);
+            setPrefixes(Collections.EMPTY_MAP);
+        else
+            setPrefixes(new QueryParser("oslc.prefix", prefixParameter).prefix_defs());
         return this;
     }
     /**
@@ -189,34 +238,7 @@ public class QueryCriteria {
      */
     public void setProperties(List<Property> properties) {
         this.properties = Objects.requireNonNull(properties, "properties cannot be null");
-    }
-    /**
-     * Decomposes a {@code compound_term} into a list of conditions.
-     * @param properties the properties term.
-     * @return decomposed properties.
-     */
-    private List<Property> properties(String properties) {
-        String property;
-        Pattern pattern;
-        Matcher matcher;
-        List<Property> localProperties;
-        if (properties == null || properties.isEmpty())
-            localProperties = Collections.EMPTY_LIST;
-        else if (!properties.matches(PROPERTY + "(," + PROPERTY + ")*"))
-            throw new IllegalArgumentException("Bad formed properties: " + properties);
-        else {
-            localProperties = new ArrayList<>();
-            pattern = Pattern.compile(",?" + PROPERTY);
-            matcher = pattern.matcher(properties);
-            while(matcher.find()) {
-                property = matcher.group(1);
-                if (matcher.group(6) == null)
-                    localProperties.add(new Property(property));
-                else
-                    localProperties.add(new Property(property, properties(matcher.group(6))));
-            }
-        }
-        return localProperties;
+        this.prepared = new LRUCache<>(PREPARED_SIZE);
     }
     /**
      * Parses the {@code oslc.select} parameter to
@@ -228,7 +250,10 @@ public class QueryCriteria {
      * formed.
      */
     public QueryCriteria select(String selectParameter) {
-        setProperties(properties(selectParameter));
+        if (selectParameter == null || selectParameter.isEmpty())
+            setProperties(Collections.EMPTY_LIST);
+        else
+            setProperties(new QueryParser("oslc.select", selectParameter).select());
         return this;
     }
     /**
@@ -237,51 +262,7 @@ public class QueryCriteria {
      */
     public void setConditions(List<Condition> conditions) {
         this.conditions = Objects.requireNonNull(conditions, "conditions cannot be null");
-    }
-    /**
-     * Decomposes a {@code in_val} into a list of values.
-     * @param inVal the compound {@code in_val}.
-     * @return decomposed values.
-     */
-    private String[] in_val(String inVal) {
-        List<String> values = new ArrayList<>();
-        if (!inVal.matches(VALUE + "(," + VALUE + ")*"))
-            throw new IllegalArgumentException("Bad formed in_val: " + inVal);
-        Pattern pattern = Pattern.compile(",?" + VALUE);
-        Matcher matcher = pattern.matcher(inVal);
-        while(matcher.find())
-            values.add(matcher.group(1));
-        return values.toArray(new String[0]);
-    }
-    /**
-     * Decomposes a {@code compound_term} into a list of conditions.
-     * @param compoundTerm the compound term.
-     * @return decomposed conditions.
-     */
-    private List<Condition> compound_term(String compoundTerm) {
-        String property;
-        Pattern pattern;
-        Matcher matcher;
-        List<Condition> localConditions;
-        if (compoundTerm == null || compoundTerm.isEmpty())
-            localConditions = Collections.EMPTY_LIST;
-        else if (!compoundTerm.matches(TERM + "( and " + TERM + ")*"))
-            throw new IllegalArgumentException("Bad formed compoundTerm: " + compoundTerm);
-        else {
-            localConditions = new ArrayList<>();
-            pattern = Pattern.compile("( and )?" + TERM);
-            matcher = pattern.matcher(compoundTerm);
-            while(matcher.find()) {
-                property = matcher.group(2);
-                if (matcher.group(23) != null)
-                    localConditions.add(new Condition(property, compound_term(matcher.group(23))));
-                else if (matcher.group(19) != null)
-                    localConditions.add(new Condition(property, matcher.group(19), in_val(matcher.group(20))));
-                else
-                    localConditions.add(new Condition(property, matcher.group(7), matcher.group(9)));
-            }
-        }
-        return localConditions;
+        this.prepared = new LRUCache<>(PREPARED_SIZE);
     }
     /**
      * Parses the {@code oslc.where} parameter to
@@ -291,7 +272,10 @@ public class QueryCriteria {
      * @throws IllegalArgumentException if {@code whereParameter} is bad formed.
      */
     public QueryCriteria where(String whereParameter) {
-        setConditions(compound_term(whereParameter));
+        if (whereParameter == null || whereParameter.isEmpty())
+            setConditions(Collections.EMPTY_LIST);
+        else
+            setConditions(new QueryParser("oslc.where", whereParameter).where());
         return this;
     }
     /**
@@ -300,32 +284,7 @@ public class QueryCriteria {
      */
     public void setSortKeys(List<SortKey> sortKeys) {
         this.sortKeys = Objects.requireNonNull(sortKeys, "sortKeys cannot be null");
-    }
-    /**
-     * Decomposes a {@code sort_terms} into a list of sort terms.
-     * @param sortTerms the sort_terms term.
-     * @return decomposed sort keys.
-     */
-    private List<SortKey> sort_terms(String sortTerms) {
-        Pattern pattern;
-        Matcher matcher;
-        List<SortKey> localSortKeys;
-        if (sortTerms == null || sortTerms.isEmpty())
-            localSortKeys = Collections.EMPTY_LIST;
-        else if (!sortTerms.matches(SORT_TERM + "(," + SORT_TERM + ")*"))
-            throw new IllegalArgumentException("Bad formed sort_terms: " + sortTerms);
-        else {
-            localSortKeys = new ArrayList<>();
-            pattern = Pattern.compile(",?" + SORT_TERM);
-            matcher = pattern.matcher(sortTerms);
-            while(matcher.find()) {
-                if (matcher.group(12) == null)
-                    localSortKeys.add(new SortKey(matcher.group(4), matcher.group(3)));
-                else
-                    localSortKeys.add(new SortKey(matcher.group(8), sort_terms(matcher.group(12))));
-            }
-        }
-        return localSortKeys;
+        this.prepared = new LRUCache<>(PREPARED_SIZE);
     }
     /**
      * Parses the {@code oslc.orderBy} parameter to
@@ -335,97 +294,589 @@ public class QueryCriteria {
      * @throws IllegalArgumentException if {@code orderBy} is bad formed.
      */
     public QueryCriteria orderBy(String orderBy) {
-        setSortKeys(sort_terms(orderBy));
+        if (orderBy == null || orderBy.isEmpty())
+            setSortKeys(Collections.EMPTY_LIST);
+        else
+            setSortKeys(new QueryParser("oslc.orderBy", orderBy).orderBy());
         return this;
     }
     /**
-     * Gets the OSLC SPARQL query equivalent to this criteria.
-     * @param base the URL for the OSLC queryBase resource.
+     * Sets the full-text search terms to use in the query.
+     * @param searchTerms the full-text search terms to use in the query.
+     */
+    public void setSearchTerms(List<String> searchTerms) {
+        this.searchTerms = Objects.requireNonNull(searchTerms, "searchTerms cannot be null");
+        this.prepared = new LRUCache<>(PREPARED_SIZE);
+    }
+    /**
+     * Parses the {@code oslc.searchTerms} parameter to
+     * {@link #setSearchTerms(java.util.List) set the search terms} of this
+     * instance. Resources having a string literal containing any of the
+     * terms match, sorted by relevance before the {@code oslc.orderBy} keys.
+     * @param searchTerms the {@code oslc.searchTerms} parameter.
+     * @return this instance.
+     * @throws IllegalArgumentException if {@code searchTerms} is bad formed.
+     */
+    public QueryCriteria searchTerms(String searchTerms) {
+        if (searchTerms == null || searchTerms.isEmpty())
+            setSearchTerms(Collections.EMPTY_LIST);
+        else
+            setSearchTerms(new QueryParser("oslc.searchTerms", searchTerms).search_terms());
+        return this;
+    }
+    /**
+     * Sets the paging of the query.
+     * @param pageSize the maximum number of resources per page; zero or
+     * negative to disable paging.
+     * @param pageToken the continuation token of the requested page;
+     * {@code null} for the first page.
+     * @throws IllegalArgumentException if {@code pageToken} is not a valid
+     * continuation token for this criteria sort keys.
+     */
+    public void setPaging(int pageSize, String pageToken) {
+        this.pageSize = Math.max(0, pageSize);
+        this.offset = 0;
+        this.pageKey = pageToken == null || pageToken.isEmpty() ? null : decode(pageToken);
+    }
+    /**
+     * Sets the paging of the query from the {@code oslc.paging} and
+     * {@code oslc.pageSize} parameters. Must be called after
+     * {@link #orderBy(java.lang.String)}, since continuation tokens depend on
+     * the sort keys.
+     * @param paging the {@code oslc.paging} parameter.
+     * @param pageSize the {@code oslc.pageSize} parameter; if {@code null}
+     * the default page size is used.
+     * @param pageToken the continuation token of the requested page.
+     * @return this instance.
+     * @throws IllegalArgumentException if {@code pageSize} is not positive
+     * or {@code pageToken} is not valid.
+     */
+    public QueryCriteria paging(boolean paging, Integer pageSize, String pageToken) {
+        if (pageSize != null && pageSize <= 0)
+            throw new IllegalArgumentException("Bad formed oslc.pageSize: " + pageSize);
+        if (paging || pageSize != null || pageToken != null)
+            setPaging(pageSize == null ? Environment.QUERY_PAGE_SIZE : pageSize, pageToken);
+        return this;
+    }
+    /**
+     * Determines whether the query is paged.
+     * @return {@code true} if the query is paged; {@code false} otherwise.
+     */
+    public boolean isPaged() {
+        return pageSize > 0;
+    }
+    /**
+     * Gets the maximum number of resources per page.
+     * @return the maximum number of resources per page; zero if the query is
+     * not paged.
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+    /**
+     * Gets the number of text index hits the page query ranks. Each matching
+     * resource has at least one hit, so the hits of the resources up to the
+     * requested page, plus one, are enough unless some hits belong to
+     * resources filtered out by other terms.
+     * @return the text index hits of the page query, within
+     * {@link Environment#QUERY_TEXT_MAX_HITS}.
+     */
+    public int getPageHits() {
+        if (searchTerms.isEmpty())
+            return Environment.QUERY_TEXT_MAX_HITS;
+        return (int) Math.min(Environment.QUERY_TEXT_MAX_HITS, offset + pageSize + 1);
+    }
+    /**
+     * Sets the continuation token of the page following the searched one.
+     * @param nextPageToken the continuation token; {@code null} if the
+     * searched page is the last one.
+     */
+    public void setNextPageToken(String nextPageToken) {
+        this.nextPageToken = nextPageToken;
+    }
+    /**
+     * Gets the continuation token of the page following the searched one.
+     * @return the continuation token; {@code null} if the searched page is
+     * the last one or the query has not been searched.
+     */
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+    /**
+     * Gets the keys that take part in paging: the relevance score, if
+     * searching, followed by the simple sort keys.
+     * @return the page keys, by their variable in the search pattern.
+     */
+    private List<SortCondition> getPageKeys() {
+        List<SortCondition> keys = new ArrayList<>();
+        if (!searchTerms.isEmpty())
+            keys.add(new SortCondition(SCORE, Query.ORDER_DESCENDING));
+        for (SortKey sortKey : sortKeys)
+            if (sortKey.isSimple())
+                keys.add(new SortCondition(Var.alloc(sortKey.getObjectVariable("?" + MATCH.getVarName()).substring(1)),
+                        sortKey.isAscending() ? Query.ORDER_ASCENDING : Query.ORDER_DESCENDING));
+        return keys;
+    }
+    /**
+     * Gets the continuation token after the last resource of a page.
+     * @param last the last row of the page, as selected by
+     * {@link #getPageQuery(java.lang.String...)}.
+     * @return the continuation token of the following page.
+     */
+    public String getPageToken(QuerySolution last) {
+        RDFNode value;
+        StringBuilder token = new StringBuilder();
+        int keys = getPageKeys().size();
+        for (int i = 0; i < keys; i++) {
+            value = last.get(PAGE_KEY + i);
+            if (value != null)
+                token.append(NodeFmtLib.str(value.asNode()));
+            token.append('\n');
+        }
+        token.append(NodeFmtLib.str(last.get(MATCH.getVarName()).asNode()));
+        token.append('\n');
+        token.append(offset + pageSize);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    /**
+     * Decodes a continuation token into the sort values it denotes, and sets
+     * the offset of the requested page.
+     * @param token the continuation token.
+     * @return the sort values followed by the last resource of the previous
+     * page; unbound values are {@code null}.
+     * @throws IllegalArgumentException if the token is not valid.
+     */
+    private Node[] decode(String token) {
+        Node[] nodes;
+        String[] values;
+        try {
+            values = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\n", -1);
+            if (values.length != getPageKeys().size() + 2)
+                throw new IllegalArgumentException("wrong number of keys");
+            nodes = new Node[values.length - 1];
+            for (int i = 0; i < nodes.length; i++) {
+                if (values[i].isEmpty() && i < nodes.length - 1)
+                    continue;
+                nodes[i] = NodeFactoryExtra.parseNode(values[i]);
+                if (!nodes[i].isURI() && !(nodes[i].isLiteral() && i < nodes.length - 1))
+                    throw new IllegalArgumentException("unexpected term " + values[i]);
+            }
+            offset = Long.parseLong(values[nodes.length]);
+            if (offset < 0)
+                throw new IllegalArgumentException("negative offset " + offset);
+            return nodes;
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Bad formed oslc.pageToken: " + ex.getMessage(), ex);
+        }
+    }
+    /**
+     * Gets the prefixes to resolve the prefixed names of this criteria.
+     * @return the prefixes of this criteria plus the OSLC core ones.
+     */
+    private PrefixMap getPrefixMap() {
+        PrefixMap map = PrefixMapFactory.create();
+        prefixes.forEach((namespace, prefix) -> {
+            map.add(prefix, namespace);
+        });
+        map.add(OslcConstants.DCTERMS_NAMESPACE_PREFIX, OslcConstants.DCTERMS_NAMESPACE);
+        map.add(OslcConstants.OSLC_CORE_NAMESPACE_PREFIX, OslcConstants.OSLC_CORE_DOMAIN);
+        map.add(OslcConstants.RDFS_NAMESPACE_PREFIX, OslcConstants.RDFS_NAMESPACE);
+        map.add(OslcConstants.RDF_NAMESPACE_PREFIX, OslcConstants.RDF_NAMESPACE);
+        map.add("xsd", OslcConstants.XML_NAMESPACE);
+        return map;
+    }
+    /**
+     * Creates a query with the prefixes and graphs of this criteria.
+     * @param map the prefixes of this criteria.
      * @param graphs the target graphs.
-     * @return the corresponding OSLC SPARQL query.
+     * @return the new query.
+     */
+    private Query newQuery(PrefixMap map, String... graphs) {
+        Query query = new Query();
+        query.setPrefixMapping(new PrefixMappingImpl().setNsPrefixes(map.getMappingCopyStr()));
+        for (String graph : graphs)
+            query.addGraphURI(Models.getStoreURN(graph));
+        return query;
+    }
+    /**
+     * Checks the terms of this criteria, so bad terms are reported when the
+     * parameters are parsed rather than when searching.
+     * @throws IllegalArgumentException if a term uses an unknown prefix or
+     * refers to a property the type shape does not declare.
      */
-    public String getSparqlQuery(String base, String... graphs) {
-        String match = "?M";
-        StringBuilder sb = new StringBuilder();
-        Map<String, String> finalPrefixes = new HashMap<>(prefixes);
-        finalPrefixes.put(OslcConstants.DCTERMS_NAMESPACE, OslcConstants.DCTERMS_NAMESPACE_PREFIX);
-        finalPrefixes.put(OslcConstants.OSLC_CORE_DOMAIN, OslcConstants.OSLC_CORE_NAMESPACE_PREFIX);
-        finalPrefixes.put(OslcConstants.RDFS_NAMESPACE, OslcConstants.RDFS_NAMESPACE_PREFIX);
-        finalPrefixes.put(OslcConstants.RDF_NAMESPACE, OslcConstants.RDF_NAMESPACE_PREFIX);
-        finalPrefixes.put(OslcConstants.XML_NAMESPACE, "xsd");
-        finalPrefixes.forEach((namespace, prefix) -> {
-            Queries.prefix(prefix, namespace, sb);
+    public void validate() {
+        buildPattern(new QueryBuilder(getPrefixMap()), true, Environment.QUERY_TEXT_MAX_HITS);
+    }
+    /**
+     * Builds the graph pattern matching the resources of this criteria.
+     * Conditions are compiled from the most to the least selective:
+     * equalities, membership tests, scoped conditions and comparisons.
+     * @param builder the query builder.
+     * @param projection whether to include the optional patterns of the
+     * projection properties.
+     * @param hits the maximum number of text index hits to rank.
+     */
+    private void buildPattern(QueryBuilder builder, boolean projection, int hits) {
+        List<Condition> planned = new ArrayList<>(conditions);
+        planned.sort(Comparator.comparingInt(QueryCriteria::getSelectivity));
+        if (!searchTerms.isEmpty())
+            builder.search(MATCH, SCORE, getTextQuery(), hits);
+        builder.type(MATCH, type);
+        planned.forEach((condition) -> {
+            checkDeclared(builder, condition);
+            builder.condition(MATCH, condition);
         });
-        sb.append("CONSTRUCT {<");
-        sb.append(base);
-        sb.append("> ");
-        sb.append(" rdfs:member ");
-        sb.append(match);
-        sb.append(" . ");
-        sb.append(match);
-        sb.append(" oslc:score ?oslcSC ");
-        properties.forEach((property) -> {
-            property.formatProjection(match, sb);
+        //if it is the Generic QueryCapability and the user didn't filter
+        //by rdf:type, only those resource without a type should appear.
+        builder.untyped(MATCH);
+        if (projection) {
+            properties.forEach((property) -> {
+                match(builder, property);
+            });
+        }
+        sortKeys.forEach((sortKey) -> {
+            match(builder, sortKey);
         });
-        sb.append('}');
-        for (String graph : graphs) {
-            sb.append(" FROM <");
-            sb.append(Models.getStoreURN(graph));
-            sb.append('>');
+    }
+    /**
+     * Binds the values of a resource property: with a plain join if the
+     * shape declares it occurring exactly once; optionally otherwise.
+     * @param builder the query builder.
+     * @param property the resource property.
+     */
+    private void match(QueryBuilder builder, Property<?> property) {
+        if (isExactlyOne(builder, property))
+            builder.join(MATCH, property);
+        else
+            builder.optional(MATCH, property);
+    }
+    /**
+     * Determines whether every resource has exactly one value of a property,
+     * according to the type shape.
+     * @param builder the query builder.
+     * @param property the resource property.
+     * @return {@code true} if the property occurs exactly once; {@code false}
+     * otherwise or if there is no shape.
+     * @throws IllegalArgumentException if the shape does not declare the
+     * property.
+     */
+    private boolean isExactlyOne(QueryBuilder builder, Property<?> property) {
+        String uri = checkDeclared(builder, property);
+        return uri != null && shape.isExactlyOne(uri);
+    }
+    /**
+     * Checks the type shape declares a resource property. Wildcards and
+     * {@code rdf:type} need no declaration.
+     * @param builder the query builder.
+     * @param property the resource property.
+     * @return the property URI; {@code null} if there is no shape or the
+     * property needs no declaration.
+     * @throws IllegalArgumentException if the shape does not declare the
+     * property.
+     */
+    private String checkDeclared(QueryBuilder builder, Property<?> property) {
+        Node predicate = builder.getPredicate(MATCH, property);
+        if (shape == null || !predicate.isURI() || RDF.type.asNode().equals(predicate))
+            return null;
+        if (!shape.isDeclared(predicate.getURI()))
+            throw new IllegalArgumentException("The shape of <" + type + "> does not declare the property <"
+                    + predicate.getURI() + ">");
+        return predicate.getURI();
+    }
+    /**
+     * Ranks a condition by how selective its compiled pattern is.
+     * @param condition the condition.
+     * @return the rank, lower being more selective.
+     */
+    private static int getSelectivity(Condition condition) {
+        if (condition.isScoped())
+            return 2;
+        switch (condition.getOperator()) {
+            case "=": return 0;
+            case "in": return 1;
+            default: return 3;
         }
-        sb.append(" WHERE { ");
-        sb.append(match);
-        sb.append(' ');
-        if (type == null) {
-            sb.append(Property.predicate(match, Property.WILDCARD));
-            sb.append(' ');
-            sb.append(Property.objectVariable(match, Property.WILDCARD));
-        } else {
-            sb.append(Property.RDF_TYPE);
-            sb.append(" <");
-            sb.append(type);
-            sb.append('>');
+    }
+    /**
+     * Gets the SPARQL query selecting the resources of the requested page,
+     * plus one to tell whether there is a following page. Resources are
+     * sorted by relevance, if searching, by the simple sort keys and then by
+     * URI; the continuation
+     * token, if any, restricts the selection to the resources sorted after
+     * the last one of the previous page (keyset paging), so no offset needs
+     * to be skipped for deep pages. Full-text searches rank only the
+     * {@link #getPageHits() page hits}.
+     * @param graphs the target graphs.
+     * @return the page selection query.
+     */
+    public Query getPageQuery(String... graphs) {
+        return getPageQuery(getPageHits(), graphs);
+    }
+    /**
+     * Gets the SPARQL query selecting the resources of the requested page,
+     * plus one, ranking a given number of text index hits. Only the queries
+     * ranking the hits of the first page or the maximum number of hits are
+     * kept for reuse; deeper pages are built on every call.
+     * @param hits the maximum number of text index hits to rank.
+     * @param graphs the target graphs.
+     * @return the page selection query.
+     */
+    public Query getPageQuery(int hits, String... graphs) {
+        ElementGroup outer;
+        Query first;
+        if (hits == pageSize + 1 || hits == Environment.QUERY_TEXT_MAX_HITS)
+            first = getPrepared(Arrays.asList("page", pageSize, hits, Arrays.asList(graphs)),
+                    () -> buildPageQuery(hits, graphs));
+        else
+            first = buildPageQuery(hits, graphs);
+        if (pageKey == null)
+            return first;
+        outer = new ElementGroup();
+        ((ElementGroup) first.getQueryPattern()).getElements().forEach(outer::addElement);
+        outer.addElement(new ElementFilter(getKeysetFilter(getPageKeys())));
+        return copy(first, outer);
+    }
+    /**
+     * Builds the SPARQL query selecting the first page.
+     * @param hits the maximum number of text index hits to rank.
+     * @param graphs the target graphs.
+     * @return the first page selection query.
+     */
+    private Query buildPageQuery(int hits, String... graphs) {
+        Var key;
+        Expr value;
+        ElementGroup outer;
+        PrefixMap map = getPrefixMap();
+        QueryBuilder builder = new QueryBuilder(map);
+        List<SortCondition> keys = getPageKeys();
+        Query query = newQuery(map, graphs);
+        Query page = new Query();
+        buildPattern(builder, false, hits);
+        builder.filter(new E_IsIRI(new ExprVar(MATCH)));
+        page.setQuerySelectType();
+        page.setDistinct(keys.isEmpty());
+        page.addResultVar(MATCH);
+        for (int i = 0; i < keys.size(); i++) {
+            value = keys.get(i).getExpression();
+            page.addResultVar(Var.alloc(PAGE_KEY + i), page.allocAggregate(isAscending(keys.get(i))
+                    ? AggregatorFactory.createMin(false, value)
+                    : AggregatorFactory.createMax(false, value)));
         }
-
-        for (Condition condition : conditions) {
-            String[] conditionValues = condition.getValues();
-            if(conditionValues.length > 0){
-                String conditionValue = conditionValues[0];
-                sb.append(" .");
-                sb.append(match);
-                sb.append(' ');
-                sb.append(condition.getPredicate(""));
-                sb.append(' ');
-                sb.append(conditionValue);
+        if (!keys.isEmpty())
+            page.addGroupBy(MATCH);
+        page.setQueryPattern(builder.getPattern());
+        outer = new ElementGroup();
+        outer.addElement(new ElementSubQuery(page));
+        query.setQuerySelectType();
+        query.setQueryResultStar(true);
+        query.setQueryPattern(outer);
+        for (int i = 0; i < keys.size(); i++) {
+            key = Var.alloc(PAGE_KEY + i);
+            query.addOrderBy(key, keys.get(i).getDirection());
+        }
+        query.addOrderBy(MATCH, Query.ORDER_ASCENDING);
+        query.setLimit(pageSize + 1);
+        query.setResultVars();
+        LOG.debug("\n\n{}\n\n", query);
+        return query;
+    }
+    /**
+     * Gets the SPARQL query counting all the resources matching this
+     * criteria, regardless of paging.
+     * @param graphs the target graphs.
+     * @return the counting query, selecting the {@code count} variable.
+     */
+    public Query getCountQuery(String... graphs) {
+        return getPrepared(Arrays.asList("count", Arrays.asList(graphs)), () -> buildCountQuery(graphs));
+    }
+    /**
+     * Gets a shallow copy of a built query, building and keeping it first if
+     * it is not already prepared.
+     * @param key the query kind and target.
+     * @param builder builds the query if it is not prepared.
+     * @return the copy of the prepared query.
+     */
+    private Query getPrepared(List<Object> key, Supplier<Query> builder) {
+        Query query = prepared.get(key);
+        if (query == null) {
+            query = builder.get();
+            prepared.put(key, query);
+        }
+        return QueryTransformOps.shallowCopy(query);
+    }
+    /**
+     * Builds the SPARQL query counting all the resources matching this
+     * criteria.
+     * @param graphs the target graphs.
+     * @return the counting query.
+     */
+    private Query buildCountQuery(String... graphs) {
+        PrefixMap map = getPrefixMap();
+        QueryBuilder builder = new QueryBuilder(map);
+        Query query = newQuery(map, graphs);
+        buildPattern(builder, false, Environment.QUERY_TEXT_MAX_HITS);
+        query.setQuerySelectType();
+        query.addResultVar(COUNT, query.allocAggregate(AggregatorFactory.createCountExpr(true, new ExprVar(MATCH))));
+        query.setQueryPattern(builder.getPattern());
+        query.setResultVars();
+        LOG.debug("\n\n{}\n\n", query);
+        return query;
+    }
+    /**
+     * Builds the keyset filter selecting the resources sorted after the
+     * continuation token. Sort values are compared by the {@link SortOrder}
+     * of {@code ORDER BY}, so no rows are skipped when they mix datatypes;
+     * unbound ones sort first in ascending order and last in descending
+     * order.
+     * @param keys the page keys.
+     * @return the keyset filter expression.
+     */
+    private Expr getKeysetFilter(List<SortCondition> keys) {
+        Expr variable, value, order;
+        Expr filter = new E_GreaterThan(new E_Str(new ExprVar(MATCH)),
+                NodeValue.makeString(pageKey[keys.size()].getURI()));
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            variable = new ExprVar(PAGE_KEY + i);
+            if (pageKey[i] == null) {
+                if (isAscending(keys.get(i)))
+                    filter = new E_LogicalOr(new E_Bound(variable), filter);
+                else
+                    filter = new E_LogicalAnd(new E_LogicalNot(new E_Bound(variable)), filter);
+            } else {
+                value = NodeValue.makeNode(pageKey[i]);
+                order = new E_Function(SortOrder.URI, new ExprList(Arrays.asList(variable, value)));
+                filter = new E_LogicalOr(isAscending(keys.get(i))
+                        ? new E_GreaterThan(order, ZERO)
+                        : new E_LessThan(order, ZERO),
+                        new E_LogicalAnd(new E_Equals(order, ZERO), filter));
+                if (!isAscending(keys.get(i)))
+                    filter = new E_LogicalOr(filter, new E_LogicalNot(new E_Bound(variable)));
             }
         }
-
-        conditions.forEach((condition) -> {
-            condition.formatSelection(match, sb);
-        });
-        if (sb.indexOf(Property.RDF_TYPE, sb.indexOf("WHERE")) < 0) {
-            //if it is the Generic QueryCapability and the user didn't filter
-            //by rdf:type, only those resource without a type should appear.
-            sb.append(". FILTER(NOT EXISTS {");
-            sb.append(match);
-            sb.append(' ');
-            sb.append(Property.predicate(match, Property.RDF_TYPE));
-            sb.append(' ');
-            sb.append(Property.objectVariable(match, Property.RDF_TYPE));
-            sb.append("})");
+        return filter;
+    }
+    /**
+     * Determines whether a page key sorts in ascending order.
+     * @param key the page key.
+     * @return {@code true} if {@code key} sorts in ascending order;
+     * {@code false} otherwise.
+     */
+    private static boolean isAscending(SortCondition key) {
+        return key.getDirection() != Query.ORDER_DESCENDING;
+    }
+    /**
+     * Gets the text index query matching any of the search terms.
+     * @return the text index query.
+     */
+    private String getTextQuery() {
+        StringBuilder text = new StringBuilder();
+        for (String term : searchTerms) {
+            if (text.length() > 0)
+                text.append(' ');
+            text.append(TextIndexes.phrase(term));
+        }
+        return text.toString();
+    }
+    /**
+     * Gets the OSLC SPARQL query equivalent to this criteria.
+     * @param base the URL for the OSLC queryBase resource.
+     * @param graphs the target graphs.
+     * @return the corresponding OSLC SPARQL query.
+     */
+    public Query getSparqlQuery(String base, String... graphs) {
+        return getSparqlQuery(base, null, graphs);
+    }
+    /**
+     * Gets the OSLC SPARQL query equivalent to this criteria, restricted to
+     * some resources.
+     * @param base the URL for the OSLC queryBase resource.
+     * @param members the URIs of the resources to build, usually a page;
+     * {@code null} to build all the matching resources.
+     * @param graphs the target graphs.
+     * @return the corresponding OSLC SPARQL query.
+     */
+    public Query getSparqlQuery(String base, List<String> members, String... graphs) {
+        ElementData values;
+        ElementGroup pattern;
+        Query query = getPrepared(Arrays.asList("construct", base, Arrays.asList(graphs)),
+                () -> buildSparqlQuery(base, graphs));
+        if (members == null)
+            return query;
+        values = new ElementData();
+        values.add(MATCH);
+        for (String member : members)
+            values.add(BindingFactory.binding(MATCH, NodeFactory.createURI(member)));
+        pattern = new ElementGroup();
+        pattern.addElement(values);
+        ((ElementGroup) query.getQueryPattern()).getElements().forEach(pattern::addElement);
+        return copy(query, pattern);
+    }
+    /**
+     * Copies a built query replacing its graph pattern; the rest of the
+     * query is shared, not cloned.
+     * @param query the built query.
+     * @param pattern the graph pattern of the copy.
+     * @return the copy.
+     */
+    private static Query copy(Query query, ElementGroup pattern) {
+        Query copy = new Query();
+        copy.setPrefixMapping(query.getPrefixMapping());
+        query.getGraphURIs().forEach(copy::addGraphURI);
+        if (query.isConstructType()) {
+            copy.setQueryConstructType();
+            copy.setConstructTemplate(query.getConstructTemplate());
+        } else {
+            copy.setQuerySelectType();
+            copy.setQueryResultStar(true);
         }
+        copy.setQueryPattern(pattern);
+        if (query.hasOrderBy())
+            query.getOrderBy().forEach(copy::addOrderBy);
+        copy.setLimit(query.getLimit());
+        copy.setResultVars();
+        return copy;
+    }
+    /**
+     * Builds the OSLC SPARQL query equivalent to this criteria.
+     * @param base the URL for the OSLC queryBase resource.
+     * @param graphs the target graphs.
+     * @return the corresponding OSLC SPARQL query.
+     */
+    private Query buildSparqlQuery(String base, String... graphs) {
+        PrefixMap map = getPrefixMap();
+        Set<Var> projected = new HashSet<>();
+        BasicPattern template = new BasicPattern();
+        QueryBuilder builder = new QueryBuilder(map);
+        Query query = newQuery(map, graphs);
+        template.add(new Triple(NodeFactory.createURI(base), RDFS.member.asNode(), MATCH));
+        template.add(new Triple(MATCH, builder.getNode("oslc:score"), SCORE));
         properties.forEach((property) -> {
-            property.formatSelection(match, sb);
-        });
-        sortKeys.forEach((sortKey) -> {
-            sortKey.formatSelection(match, sb);
-        });
-        sb.append("} ORDER BY ?SC");
-        sortKeys.forEach((sortKey) -> {
-            sortKey.formatProjection(match, sb);
+            builder.project(template, projected, MATCH, property);
         });
-        base = sb.toString();
-        LOG.info("\n\n{}\n\n", base);
-        return base;
+        buildPattern(builder, true, Environment.QUERY_TEXT_MAX_HITS);
+        query.setQueryConstructType();
+        query.setConstructTemplate(new Template(template));
+        query.setQueryPattern(builder.getPattern());
+        if (!searchTerms.isEmpty())
+            query.addOrderBy(SCORE, Query.ORDER_DESCENDING);
+        addOrderBy(query, builder, MATCH, sortKeys);
+        LOG.debug("\n\n{}\n\n", query);
+        return query;
+    }
+    /**
+     * Adds sort keys, including nested ones, to the order of a query.
+     * @param query the target query.
+     * @param builder the query builder.
+     * @param subject the variable the keys belong to.
+     * @param keys the sort keys.
+     */
+    private void addOrderBy(Query query, QueryBuilder builder, Var subject, List<SortKey> keys) {
+        Var object;
+        for (SortKey key : keys) {
+            object = builder.getObject(subject, key);
+            if (key.isSimple())
+                query.addOrderBy(object, key.isAscending() ? Query.ORDER_ASCENDING : Query.ORDER_DESCENDING);
+            addOrderBy(query, builder, object, key.getProperties());
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,451 @@
+package com.ld4mbse.oslc4tdb.tdb.query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recursive-descent parser of the {@code oslc.prefix}, {@code oslc.where},
+ * {@code oslc.select}, {@code oslc.orderBy} and {@code oslc.searchTerms}
+ * sintaxes. Every character is
+ * read at most once, so parsing takes linear time regardless of the input.
+ * An instance parses a single parameter value.
+ * @see http://open-services.net/bin/view/Main/OSLCCoreSpecQuery
+ * @author rherrera
+ */
+class QueryParser {
+    /**
+     * Maximum nesting of scoped terms.
+     */
+    private static final int MAX_DEPTH = 32;
+    /**
+     * The name of the parsed parameter, for error reporting.
+     */
+    private final String parameter;
+    /**
+     * The parsed parameter value.
+     */
+    private final String input;
+    /**
+     * The position of the next character to read.
+     */
+    private int position;
+    /**
+     * The nesting of the scoped term being parsed.
+     */
+    private int depth;
+    /**
+     * Constructs an instance specifying the parameter to parse.
+     * @param parameter the parameter name.
+     * @param input the parameter value.
+     */
+    QueryParser(String parameter, String input) {
+        this.parameter = parameter;
+        this.input = input;
+    }
+    /**
+     * Parses an {@code oslc.prefix} value.
+     * @return the prefixes, keyed by namespace.
+     * @throws IllegalArgumentException if the value is bad formed.
+     */
+    Map<String, String> prefix_defs() {
+        String prefix;
+        Map<String, String> prefixes = new HashMap<>();
+        do {
+            prefix = pn_prefix();
+            expect('=');
+            prefixes.put(iri_ref(), prefix);
+        } while (accept(','));
+        end();
+        return prefixes;
+    }
+    /**
+     * Parses an {@code oslc.where} value.
+     * @return the conditions.
+     * @throws IllegalArgumentException if the value is bad formed.
+     */
+    List<Condition> where() {
+        List<Condition> conditions = compound_term();
+        end();
+        return conditions;
+    }
+    /**
+     * Parses an {@code oslc.select} value.
+     * @return the properties.
+     * @throws IllegalArgumentException if the value is bad formed.
+     */
+    List<Property> select() {
+        List<Property> properties = properties();
+        end();
+        return properties;
+    }
+    /**
+     * Parses an {@code oslc.orderBy} value.
+     * @return the sort keys.
+     * @throws IllegalArgumentException if the value is bad formed.
+     */
+    List<SortKey> orderBy() {
+        List<SortKey> sortKeys = sort_terms();
+        end();
+        return sortKeys;
+    }
+    /**
+     * Parses an {@code oslc.searchTerms} value: comma separated strings.
+     * @return the search terms, unescaped.
+     * @throws IllegalArgumentException if the value is bad formed.
+     */
+    List<String> search_terms() {
+        int start;
+        List<String> terms = new ArrayList<>();
+        do {
+            start = position + 1;
+            string();
+            terms.add(input.substring(start, position - 1).replaceAll("\\\\(.)", "$1"));
+        } while (accept(','));
+        end();
+        return terms;
+    }
+    /**
+     * Parses a {@code compound_term}: terms joined by {@code " and "}.
+     * @return the conditions.
+     */
+    private List<Condition> compound_term() {
+        List<Condition> conditions = new ArrayList<>();
+        do {
+            conditions.add(term());
+        } while (accept(" and "));
+        return conditions;
+    }
+    /**
+     * Parses a single {@code term}: a comparison, an {@code in} test or a
+     * scoped compound term.
+     * @return the condition.
+     */
+    private Condition term() {
+        String operator;
+        List<Condition> nested;
+        String property = identifier();
+        if (accept('{')) {
+            enter();
+            nested = compound_term();
+            leave();
+            return new Condition(property, nested);
+        }
+        if (accept(" in ")) {
+            expect('[');
+            return new Condition(property, "in", in_val());
+        }
+        operator = operator();
+        return new Condition(property, operator, value());
+    }
+    /**
+     * Parses an {@code in_val}: comma separated values ending in {@code ]}.
+     * @return the values.
+     */
+    private String[] in_val() {
+        List<String> values = new ArrayList<>();
+        do {
+            values.add(value());
+        } while (accept(','));
+        expect(']');
+        return values.toArray(new String[0]);
+    }
+    /**
+     * Parses a comparison operator.
+     * @return the operator.
+     */
+    private String operator() {
+        int start = position;
+        if (accept('!'))
+            expect('=');
+        else if (accept('<') || accept('>'))
+            accept('=');
+        else
+            expect('=');
+        return input.substring(start, position);
+    }
+    /**
+     * Parses a {@code value}: an IRI reference, a boolean, a decimal or a
+     * string literal, optionally tagged or typed.
+     * @return the value, as written.
+     */
+    private String value() {
+        int start = position;
+        char next = peek();
+        if (next == '<')
+            iri_ref();
+        else if (next == '"') {
+            string();
+            if (accept('@'))
+                langtag();
+            else if (accept("^^"))
+                prefixed_name();
+        } else if (!accept("true") && !accept("false"))
+            decimal();
+        return input.substring(start, position);
+    }
+    /**
+     * Parses a double quoted string; quotes can be escaped by a backslash.
+     */
+    private void string() {
+        expect('"');
+        while (position < input.length() && input.charAt(position) != '"') {
+            if (input.charAt(position) == '\\' && position + 1 < input.length())
+                position++;
+            position++;
+        }
+        expect('"');
+    }
+    /**
+     * Parses a language tag, without its leading {@code @}.
+     */
+    private void langtag() {
+        if (!letter(peek()))
+            error("language tag");
+        position++;
+        while (true) {
+            if (alphanumeric(peek()))
+                position++;
+            else if (!accept('-'))
+                return;
+            else if (!alphanumeric(peek()))
+                error("language subtag");
+        }
+    }
+    /**
+     * Parses a decimal number.
+     */
+    private void decimal() {
+        if (!accept('+'))
+            accept('-');
+        digits("value");
+        if (accept('.'))
+            digits("decimal digits");
+        if (accept('e') || accept('E')) {
+            if (!accept('+'))
+                accept('-');
+            digits("exponent digits");
+        }
+    }
+    /**
+     * Parses one or more digits.
+     * @param expected what is expected, for error reporting.
+     */
+    private void digits(String expected) {
+        if (!digit(peek()))
+            error(expected);
+        while (digit(peek()))
+            position++;
+    }
+    /**
+     * Parses an {@code IRI_REF}.
+     * @return the IRI, without angle brackets.
+     */
+    private String iri_ref() {
+        int start;
+        expect('<');
+        start = position;
+        while (position < input.length() && "<>\"{}|`\\".indexOf(input.charAt(position)) < 0)
+            position++;
+        if (position == start)
+            error("IRI");
+        expect('>');
+        return input.substring(start, position - 1);
+    }
+    /**
+     * Parses a comma separated list of properties, optionally scoped.
+     * @return the properties.
+     */
+    private List<Property> properties() {
+        String property;
+        List<Property> properties = new ArrayList<>();
+        do {
+            property = identifier();
+            if (accept('{')) {
+                enter();
+                properties.add(new Property(property, properties()));
+                leave();
+            } else
+                properties.add(new Property(property));
+        } while (accept(','));
+        return properties;
+    }
+    /**
+     * Parses a comma separated list of {@code sort_term}: a signed
+     * identifier or a scoped list of sort terms.
+     * @return the sort keys.
+     */
+    private List<SortKey> sort_terms() {
+        char direction;
+        String property;
+        List<SortKey> sortKeys = new ArrayList<>();
+        do {
+            direction = peek();
+            if (accept('+') || accept('-'))
+                sortKeys.add(new SortKey(identifier(), String.valueOf(direction)));
+            else {
+                property = identifier();
+                expect('{');
+                enter();
+                sortKeys.add(new SortKey(property, sort_terms()));
+                leave();
+            }
+        } while (accept(','));
+        return sortKeys;
+    }
+    /**
+     * Parses an {@code identifier_wc}: the wildcard or a prefixed name.
+     * @return the identifier.
+     */
+    private String identifier() {
+        if (accept('*'))
+            return "*";
+        return prefixed_name();
+    }
+    /**
+     * Parses a {@code PrefixedName}.
+     * @return the prefixed name.
+     */
+    private String prefixed_name() {
+        int start = position;
+        pn_prefix();
+        expect(':');
+        if (!alphanumeric(peek()) && peek() != '_')
+            error("local name");
+        name();
+        return input.substring(start, position);
+    }
+    /**
+     * Parses a {@code PN_PREFIX}.
+     * @return the prefix.
+     */
+    private String pn_prefix() {
+        int start = position;
+        if (!letter(peek()))
+            error("prefix");
+        name();
+        return input.substring(start, position);
+    }
+    /**
+     * Parses the rest of a name: name characters, possibly separated by
+     * single dots. A trailing dot is not part of the name.
+     */
+    private void name() {
+        position++;
+        while (true) {
+            if (nameChar(peek()))
+                position++;
+            else if (peek() == '.' && position + 1 < input.length() && nameChar(input.charAt(position + 1)))
+                position += 2;
+            else
+                return;
+        }
+    }
+    /**
+     * Enters a scoped term, once its opening brace is consumed.
+     * @throws IllegalArgumentException if scoped terms are nested too deep.
+     */
+    private void enter() {
+        if (++depth > MAX_DEPTH)
+            error("at most " + MAX_DEPTH + " nested scopes");
+    }
+    /**
+     * Leaves a scoped term, consuming its closing brace.
+     * @throws IllegalArgumentException if the closing brace is missing.
+     */
+    private void leave() {
+        expect('}');
+        depth--;
+    }
+    /**
+     * Gets the next character without consuming it.
+     * @return the next character; {@code 0} at the end of the input.
+     */
+    private char peek() {
+        return position < input.length() ? input.charAt(position) : 0;
+    }
+    /**
+     * Consumes a character if it is the next one.
+     * @param expected the character.
+     * @return {@code true} if it was consumed; {@code false} otherwise.
+     */
+    private boolean accept(char expected) {
+        if (peek() != expected)
+            return false;
+        position++;
+        return true;
+    }
+    /**
+     * Consumes a text if it comes next.
+     * @param expected the text.
+     * @return {@code true} if it was consumed; {@code false} otherwise.
+     */
+    private boolean accept(String expected) {
+        if (!input.startsWith(expected, position))
+            return false;
+        position += expected.length();
+        return true;
+    }
+    /**
+     * Consumes a character that must come next.
+     * @param expected the character.
+     * @throws IllegalArgumentException if it does not come next.
+     */
+    private void expect(char expected) {
+        if (!accept(expected))
+            error("'" + expected + "'");
+    }
+    /**
+     * Checks the whole input has been consumed.
+     * @throws IllegalArgumentException if it has not.
+     */
+    private void end() {
+        if (position < input.length())
+            error("end of input");
+    }
+    /**
+     * Reports a syntax error at the current position.
+     * @param expected what was expected at the current position.
+     * @throws IllegalArgumentException always.
+     */
+    private void error(String expected) {
+        String found = position < input.length() ? "'" + input.charAt(position) + "'" : "end of input";
+        throw new IllegalArgumentException("Bad formed " + parameter + " at position " + position
+                + ": expected " + expected + " but found " + found);
+    }
+    /**
+     * Determines whether a character is a regular letter.
+     * @param c the character.
+     * @return {@code true} if {@code c} is a regular letter.
+     */
+    private static boolean letter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+    /**
+     * Determines whether a character is a digit.
+     * @param c the character.
+     * @return {@code true} if {@code c} is a digit.
+     */
+    private static boolean digit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    /**
+     * Determines whether a character is a letter or a digit.
+     * @param c the character.
+     * @return {@code true} if {@code c} is alphanumeric.
+     */
+    private static boolean alphanumeric(char c) {
+        return letter(c) || digit(c);
+    }
+    /**
+     * Determines whether a character can be part of a name.
+     * @param c the character.
+     * @return {@code true} if {@code c} is alphanumeric, {@code _} or
+     * {@code -}.
+     */
+    private static boolean nameChar(char c) {
+        return alphanumeric(c) || c == '_' || c == '-';
+    }
+
+}
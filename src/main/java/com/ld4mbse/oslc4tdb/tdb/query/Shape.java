@@ -0,0 +1,46 @@
+package com.ld4mbse.oslc4tdb.tdb.query;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The properties a resource shape declares for a resource type, along with
+ * their cardinalities, so queries on that type can be planned: properties
+ * occurring exactly once are joined instead of optionally matched, and
+ * properties not declared are rejected.
+ * @author rherrera
+ */
+public class Shape {
+    /**
+     * Whether each declared property, by URI, occurs exactly once.
+     */
+    private final Map<String, Boolean> properties = new HashMap<>();
+    /**
+     * Declares a property of this shape.
+     * @param property the property URI.
+     * @param exactlyOne whether every resource has exactly one value of the
+     * property.
+     */
+    public void declare(String property, boolean exactlyOne) {
+        properties.merge(property, exactlyOne, Boolean::logicalAnd);
+    }
+    /**
+     * Determines whether this shape declares a property.
+     * @param property the property URI.
+     * @return {@code true} if the property is declared; {@code false}
+     * otherwise.
+     */
+    public boolean isDeclared(String property) {
+        return properties.containsKey(property);
+    }
+    /**
+     * Determines whether every resource has exactly one value of a property.
+     * @param property the property URI.
+     * @return {@code true} if the property is declared with exactly one
+     * occurrence; {@code false} otherwise.
+     */
+    public boolean isExactlyOne(String property) {
+        return properties.getOrDefault(property, false);
+    }
+
+}
@@ -30,5 +30,22 @@ public class SortKey extends Property<SortKey> {
         super(property);
         this.direction = direction;
     }
+    /**
+     * Determines whether this is a simple sort key, that is, it has a
+     * direction instead of nested keys.
+     * @return {@code true} if this key has a direction; {@code false} if it
+     * has nested keys.
+     */
+    public boolean isSimple() {
+        return direction != null;
+    }
+    /**
+     * Determines whether this key sorts in ascending order.
+     * @return {@code true} if this key sorts in ascending order; {@code false}
+     * otherwise.
+     */
+    public boolean isAscending() {
+        return !"-".equals(direction);
+    }
 
 }
\ No newline at end of file
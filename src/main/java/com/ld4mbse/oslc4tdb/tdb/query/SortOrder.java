@@ -0,0 +1,34 @@
+package com.ld4mbse.oslc4tdb.tdb.query;
+
+import org.apache.jena.sparql.engine.binding.BindingComparator;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.function.FunctionBase2;
+import org.apache.jena.sparql.function.FunctionRegistry;
+
+/**
+ * SPARQL function comparing two terms by the total order of
+ * {@code ORDER BY}, so the resources sorted after a continuation token can
+ * be selected even if the sort values mix datatypes or are not comparable
+ * by the SPARQL operators. Evaluates to a negative integer, zero or a
+ * positive integer as the first term sorts before, together with or after
+ * the second one.
+ * @author rherrera
+ */
+public class SortOrder extends FunctionBase2 {
+    /**
+     * The function URI.
+     */
+    public static final String URI = "urn:oslc4tdb:function#sortOrder";
+    /**
+     * Registers this function in the global function registry.
+     */
+    static void register() {
+        FunctionRegistry.get().put(URI, SortOrder.class);
+    }
+
+    @Override
+    public NodeValue exec(NodeValue value1, NodeValue value2) {
+        return NodeValue.makeInteger(Integer.signum(BindingComparator.compareNodesRaw(value1, value2)));
+    }
+
+}
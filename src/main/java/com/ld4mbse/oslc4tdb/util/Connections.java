@@ -0,0 +1,334 @@
+package com.ld4mbse.oslc4tdb.util;
+
+import com.ld4mbse.oslc4tdb.model.Environment;
+import java.io.File;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.tdb.StoreConnection;
+import org.apache.jena.tdb.base.file.Location;
+import org.apache.jena.tdb.store.DatasetGraphTDB;
+import org.apache.jena.tdb.transaction.TransactionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of long-lived warehouse {@link Dataset datasets}. Datasets are
+ * opened lazily on first {@link #acquire(java.lang.String) acquisition} and
+ * kept open between requests, so TDB block and node caches stay warm. Each
+ * connection is reference-counted; unreferenced connections are closed after
+ * {@link Environment#TDB_IDLE_TIMEOUT} seconds of inactivity or when the
+ * warehouse is deleted.
+ * @author rherrera
+ */
+public class Connections {
+    /**
+     * Logger of this class.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(Connections.class);
+    /**
+     * A shared warehouse connection.
+     */
+    private static class Connection {
+        /**
+         * The underlying dataset.
+         */
+        private final Dataset dataset;
+        /**
+         * Number of current holders of this connection.
+         */
+        private int references;
+        /**
+         * Last time, in milliseconds, this connection was released.
+         */
+        private long lastAccess;
+        /**
+         * Version assigned to graphs not written since this connection was
+         * opened.
+         */
+        private final long opened = VERSIONS.incrementAndGet();
+        /**
+         * Versions of the graphs written since this connection was opened.
+         */
+        private final Map<String, Long> versions = new ConcurrentHashMap<>();
+        /**
+         * Seconds a query may run; zero or negative for no limit.
+         */
+        private final long queryTimeout;
+        /**
+         * Maximum number of triples of a query response; zero or negative
+         * for no limit.
+         */
+        private final long queryMaxTriples;
+        /**
+         * Whether the text index of the dataset is built.
+         */
+        private volatile boolean indexed;
+        /**
+         * Constructs an instance specifying the underlying dataset.
+         * @param dataset the underlying dataset.
+         * @param queryTimeout seconds a query may run; zero or negative for
+         * no limit.
+         * @param queryMaxTriples maximum number of triples of a query
+         * response; zero or negative for no limit.
+         */
+        private Connection(Dataset dataset, long queryTimeout, long queryMaxTriples) {
+            this.dataset = dataset;
+            this.lastAccess = System.currentTimeMillis();
+            this.queryTimeout = queryTimeout;
+            this.queryMaxTriples = queryMaxTriples;
+        }
+    }
+    /**
+     * Source of graph versions. Shared by all connections so a version is
+     * never reused, not even after a warehouse is closed and reopened.
+     */
+    private static final AtomicLong VERSIONS = new AtomicLong();
+    /**
+     * The open connections by warehouse name.
+     */
+    private static final Map<String, Connection> CONNECTIONS = new ConcurrentHashMap<>();
+    /**
+     * The idle connections sweeper.
+     */
+    private static final ScheduledExecutorService SWEEPER;
+    /**
+     * Static initialization.
+     */
+    static {
+        long period = Math.max(1, Environment.TDB_IDLE_TIMEOUT / 2);
+        SWEEPER = Executors.newSingleThreadScheduledExecutor((Runnable task) -> {
+            Thread thread = new Thread(task, "tdb-connections-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        SWEEPER.scheduleAtFixedRate(Connections::sweep, period, period, TimeUnit.SECONDS);
+    }
+    /**
+     * Gets the shared dataset of a warehouse, opening it if necessary. Every
+     * call must be paired with a {@link #release(java.lang.String)} call.
+     * @param warehouse the warehouse name.
+     * @return the shared warehouse dataset.
+     * @throws com.ld4mbse.oslc4tdb.rest.exception.IllegalStoreException if
+     * the warehouse does not exist.
+     * @throws IllegalStateException if the warehouse settings are not valid.
+     */
+    public static Dataset acquire(String warehouse) {
+        Connection connection = CONNECTIONS.compute(warehouse, (String name, Connection current) -> {
+            long timeout, maxTriples;
+            Properties settings;
+            if (current == null) {
+                //settings are checked first, so a bad one leaves no dataset open
+                settings = Warehouses.getSettings(name);
+                timeout = getSetting(name, settings, "timeout", Environment.QUERY_TIMEOUT);
+                maxTriples = getSetting(name, settings, "max.triples", Environment.QUERY_MAX_TRIPLES);
+                current = new Connection(Warehouses.get(name), timeout, maxTriples);
+                LOG.info("{} Dataset directory connected", name);
+            }
+            current.references++;
+            return current;
+        });
+        if (!connection.indexed)
+            build(warehouse, connection);
+        return connection.dataset;
+    }
+    /**
+     * Builds the text index of a newly opened connection, outside the
+     * registry update so other warehouses are not held back meanwhile.
+     * Concurrent acquirers wait for the build. If it fails, the connection
+     * is closed, so the next acquisition opens and builds it again.
+     * @param warehouse the warehouse name.
+     * @param connection the acquired connection.
+     */
+    private static void build(String warehouse, Connection connection) {
+        synchronized (connection) {
+            if (connection.indexed)
+                return;
+            try {
+                TextIndexes.build(warehouse, connection.dataset);
+                connection.indexed = true;
+            } catch (RuntimeException | Error ex) {
+                if (CONNECTIONS.remove(warehouse, connection)) {
+                    TextIndexes.release(connection.dataset);
+                    LOG.info("{} Dataset directory released after failing to index it", warehouse);
+                }
+                throw ex;
+            }
+        }
+    }
+    /**
+     * Gets a numeric setting of a warehouse.
+     * @param warehouse the warehouse name.
+     * @param settings the warehouse settings.
+     * @param key the setting key.
+     * @param defaultValue the value if the setting is missing.
+     * @return the setting value.
+     * @throws IllegalStateException if the setting is not a number.
+     */
+    private static long getSetting(String warehouse, Properties settings, String key, long defaultValue) {
+        String value = settings.getProperty(key);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalStateException("Bad " + key + " setting of the " + warehouse + " warehouse: " + value, ex);
+        }
+    }
+    /**
+     * Releases a previously {@link #acquire(java.lang.String) acquired}
+     * dataset. The dataset stays open until it becomes idle.
+     * @param warehouse the warehouse name.
+     */
+    public static void release(String warehouse) {
+        CONNECTIONS.computeIfPresent(warehouse, (String name, Connection current) -> {
+            if (current.references > 0) current.references--;
+            current.lastAccess = System.currentTimeMillis();
+            return current;
+        });
+    }
+    /**
+     * Runs an action directly on the storage of a warehouse while no
+     * transaction is active on it. Transactions started meanwhile wait
+     * until the action ends. Used by non-transactional operations such as
+     * bulk loading.
+     * @param warehouse the warehouse name.
+     * @param action the action to run on the warehouse storage.
+     * @throws com.ld4mbse.oslc4tdb.rest.exception.IllegalStoreException if
+     * the warehouse does not exist.
+     */
+    public static void exclusive(String warehouse, Consumer<DatasetGraphTDB> action) {
+        TransactionManager transactions;
+        StoreConnection connection;
+        acquire(warehouse);
+        try {
+            connection = StoreConnection.make(Location.create(Environment.TDB_LOCATION + File.separator + warehouse));
+            transactions = connection.getTransactionManager();
+            transactions.startExclusiveMode();
+            LOG.debug("{} Dataset directory in exclusive mode", warehouse);
+            try {
+                action.accept(connection.getBaseDataset());
+            } finally {
+                transactions.finishExclusiveMode();
+                LOG.debug("{} Dataset directory left exclusive mode", warehouse);
+            }
+        } finally {
+            release(warehouse);
+        }
+    }
+    /**
+     * Gets the current version of a graph. The version changes every time
+     * the graph is {@link #modified(java.lang.String, java.lang.String)
+     * modified}, so it can key caches of data derived from the graph. To
+     * not cache stale data, read the version before starting the read
+     * transaction the data is derived from.
+     * @param warehouse the warehouse name.
+     * @param graph the graph name.
+     * @return the current version of the graph; a new version on every call
+     * if the warehouse connection is not open.
+     */
+    public static long getVersion(String warehouse, String graph) {
+        Connection connection = CONNECTIONS.get(warehouse);
+        if (connection == null)
+            return VERSIONS.incrementAndGet();
+        return connection.versions.getOrDefault(graph, connection.opened);
+    }
+    /**
+     * Records that a graph was modified, changing its version. Call it after
+     * the modifying transaction commits.
+     * @param warehouse the warehouse name.
+     * @param graph the graph name.
+     */
+    public static void modified(String warehouse, String graph) {
+        Connection connection = CONNECTIONS.get(warehouse);
+        if (connection != null)
+            connection.versions.put(graph, VERSIONS.incrementAndGet());
+    }
+    /**
+     * Gets the seconds a query on a warehouse may run, as set by its
+     * settings when the connection was opened.
+     * @param warehouse the warehouse name.
+     * @return the query timeout in seconds; zero or negative for no limit.
+     */
+    public static long getQueryTimeout(String warehouse) {
+        Connection connection = CONNECTIONS.get(warehouse);
+        return connection == null ? Environment.QUERY_TIMEOUT : connection.queryTimeout;
+    }
+    /**
+     * Gets the maximum number of triples of a query response on a
+     * warehouse, as set by its settings when the connection was opened.
+     * @param warehouse the warehouse name.
+     * @return the maximum number of triples; zero or negative for no limit.
+     */
+    public static long getQueryMaxTriples(String warehouse) {
+        Connection connection = CONNECTIONS.get(warehouse);
+        return connection == null ? Environment.QUERY_MAX_TRIPLES : connection.queryMaxTriples;
+    }
+    /**
+     * Determines whether a warehouse connection is currently held by someone.
+     * @param warehouse the warehouse name.
+     * @return {@code true} if the warehouse connection is open and referenced;
+     * {@code false} otherwise.
+     */
+    public static boolean isReferenced(String warehouse) {
+        Connection connection = CONNECTIONS.get(warehouse);
+        return connection != null && connection.references > 0;
+    }
+    /**
+     * Determines whether a warehouse connection is open in this registry.
+     * @param warehouse the warehouse name.
+     * @return {@code true} if the warehouse connection is open; {@code false}
+     * otherwise.
+     */
+    public static boolean isOpen(String warehouse) {
+        return CONNECTIONS.containsKey(warehouse);
+    }
+    /**
+     * Closes the connection of a warehouse regardless of its references. Used
+     * when the warehouse is deleted.
+     * @param warehouse the warehouse name.
+     */
+    public static void close(String warehouse) {
+        CONNECTIONS.computeIfPresent(warehouse, (String name, Connection current) -> {
+            if (current.references > 0)
+                LOG.warn("{} Dataset directory closed with {} references", name, current.references);
+            TextIndexes.release(current.dataset);
+            LOG.info("{} Dataset directory released", name);
+            return null;
+        });
+    }
+    /**
+     * Closes all the open connections and stops the idle connections
+     * sweeper. Used when the application stops.
+     */
+    public static void closeAll() {
+        SWEEPER.shutdownNow();
+        CONNECTIONS.keySet().forEach(Connections::close);
+    }
+    /**
+     * Closes the connections not referenced for longer than the idle timeout.
+     */
+    private static void sweep() {
+        long limit = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(Environment.TDB_IDLE_TIMEOUT);
+        try {
+            CONNECTIONS.keySet().forEach((String warehouse) -> {
+                CONNECTIONS.computeIfPresent(warehouse, (String name, Connection current) -> {
+                    if (current.references > 0 || current.lastAccess > limit)
+                        return current;
+                    TextIndexes.release(current.dataset);
+                    LOG.info("{} Dataset directory released after being idle", name);
+                    return null;
+                });
+            });
+        } catch(RuntimeException ex) {
+            LOG.warn("Could not release idle Dataset directories", ex);
+        }
+    }
+
+}
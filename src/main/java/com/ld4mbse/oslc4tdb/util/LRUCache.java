@@ -0,0 +1,166 @@
+package com.ld4mbse.oslc4tdb.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * A thread-safe cache holding up to a fixed number of entries and, if a
+ * weigher is given, up to a fixed total weight; when full, the least
+ * recently used entries are evicted.
+ * @param <K> the type of keys.
+ * @param <V> the type of values.
+ * @author rherrera
+ */
+public class LRUCache<K, V> {
+    /**
+     * The entries, in access order.
+     */
+    private final Map<K, V> entries;
+    /**
+     * The maximum number of entries.
+     */
+    private final int capacity;
+    /**
+     * The maximum total weight of the entries.
+     */
+    private final long maxWeight;
+    /**
+     * Computes the weight of a value.
+     */
+    private final ToLongFunction<? super V> weigher;
+    /**
+     * The total weight of the entries.
+     */
+    private long weight;
+    /**
+     * Number of lookups that found a value.
+     */
+    private long hits;
+    /**
+     * Number of lookups that found no value.
+     */
+    private long misses;
+    /**
+     * Constructs an instance specifying its capacity.
+     * @param capacity the maximum number of entries; zero or negative to
+     * disable caching.
+     */
+    public LRUCache(int capacity) {
+        this(capacity, Long.MAX_VALUE, (V value) -> 0);
+    }
+    /**
+     * Constructs an instance specifying its capacity and memory bound.
+     * @param capacity the maximum number of entries; zero or negative to
+     * disable caching.
+     * @param maxWeight the maximum total weight of the entries.
+     * @param weigher computes the weight of a value, in the same unit as
+     * {@code maxWeight}.
+     */
+    public LRUCache(int capacity, long maxWeight, ToLongFunction<? super V> weigher) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.capacity = capacity;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+    /**
+     * Gets the value cached under a key.
+     * @param key the key.
+     * @return the cached value; {@code null} if there is none.
+     */
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null)
+            misses++;
+        else
+            hits++;
+        return value;
+    }
+    /**
+     * Caches a value under a key. Values heavier than the memory bound are
+     * not cached, and drop the value previously cached under the key, which
+     * is stale.
+     * @param key the key.
+     * @param value the value.
+     */
+    public synchronized void put(K key, V value) {
+        V old;
+        Iterator<V> eldest;
+        long valueWeight = weigher.applyAsLong(value);
+        if (valueWeight > maxWeight) {
+            remove(key);
+            return;
+        }
+        old = entries.put(key, value);
+        weight += valueWeight;
+        if (old != null)
+            weight -= weigher.applyAsLong(old);
+        eldest = entries.values().iterator();
+        while ((entries.size() > capacity || weight > maxWeight) && eldest.hasNext()) {
+            weight -= weigher.applyAsLong(eldest.next());
+            eldest.remove();
+        }
+    }
+    /**
+     * Removes the value cached under a key.
+     * @param key the key.
+     */
+    public synchronized void remove(K key) {
+        V old = entries.remove(key);
+        if (old != null)
+            weight -= weigher.applyAsLong(old);
+    }
+    /**
+     * Removes the values cached under the keys matching a condition.
+     * @param condition the condition on keys.
+     */
+    public synchronized void removeIf(Predicate<? super K> condition) {
+        Map.Entry<K, V> entry;
+        Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            entry = iterator.next();
+            if (condition.test(entry.getKey())) {
+                weight -= weigher.applyAsLong(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+    /**
+     * Removes all the cached values.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+    /**
+     * Gets the number of cached values.
+     * @return the number of cached values.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+    /**
+     * Gets the total weight of the cached values.
+     * @return the total weight of the cached values.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+    /**
+     * Gets the number of lookups that found a value.
+     * @return the number of cache hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+    /**
+     * Gets the number of lookups that found no value.
+     * @return the number of cache misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+}
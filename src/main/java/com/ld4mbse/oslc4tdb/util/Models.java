@@ -13,7 +13,9 @@ import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.riot.RDFFormat;
 import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParser;
 import org.apache.jena.riot.RDFWriterRegistry;
+import org.apache.jena.riot.system.StreamRDF;
 //import org.apache.jena.vocabulary.RDF;
 //import org.slf4j.Logger;
 //import org.slf4j.LoggerFactory;
@@ -87,6 +89,22 @@ public class Models {
         return model;
     }
 
+    /**
+     * Parses an input stream straight into a destination stream, without
+     * building an intermediate model.
+     * @param content the input stream.
+     * @param base the base URL to resolve relative paths.
+     * @param language the RDF serialization format on the input stream.
+     * @param destination the receiver of the parsed statements.
+     */
+    public static void parse(InputStream content, String base, Lang language, StreamRDF destination) {
+        RDFParser.create()
+                .source(content)
+                .base(base)
+                .lang(language)
+                .parse(destination);
+    }
+
     public static Model read(InputStream content, String base, String mimeRDFserialization) {
         Lang language = RDF_MIME_TYPES.get(mimeRDFserialization);
         if (language == null) {
@@ -275,6 +275,24 @@ public class OslcShaclAdapter {
         return new OSLCModel(baseURI, workingModel, resourceShapes);
     }
 
+    /**
+     * Determines whether a named graph holds the SHACL shapes of a store.
+     * @param graph the named graph URI.
+     * @return {@code true} if the graph is a shapes graph; {@code false}
+     * otherwise.
+     */
+    public static boolean isShapesGraph(String graph) {
+        return graph != null && graph.contains("-shacl");
+    }
+    /**
+     * Gets the name of the store whose shapes a named graph holds.
+     * @param shapesGraph the shapes graph URI.
+     * @return the store name, which is its {@code ServiceProvider} title.
+     */
+    public static String getStoreName(String shapesGraph) {
+        return getSimpleId(shapesGraph.replace("-shacl", ""));
+    }
+
     public static void addShapeResource(Dataset dataset,
                                         Resource catalog,
                                         Model model,
@@ -282,104 +300,118 @@ public class OslcShaclAdapter {
                                         String name,
                                         Map<String, Resource> resourceShapes) {
 
-        Resource provider, service, factory, queryCapability;
-        Resource shaclShape, shaclTarget, resourceShape;
-        ResIterator shaclShapes;
-        String simpleId;
-        Statement statement;
-
         Iterator<String> shaclGraphs = dataset.listNames();
         while (shaclGraphs.hasNext()) {
             String shaclGraph = shaclGraphs.next();
 
-            Model shacl = dataset.getNamedModel(shaclGraph);
-
-            if (shaclGraph.contains("-shacl")) {
-                shaclGraph = getSimpleId(shaclGraph.replace("-shacl", ""));
+            if (isShapesGraph(shaclGraph))
+                addServiceProvider(dataset.getNamedModel(shaclGraph), getStoreName(shaclGraph), catalog, model, baseURI, name, resourceShapes);
+        }
+    }
+    /**
+     * Adds the {@link ServiceProvider} of a store to an OSLC discovery model,
+     * along with the {@link ResourceShape}s not built yet.
+     * @param shacl the store SHACL shapes.
+     * @param store the store name.
+     * @param catalog the warehouse {@link ServiceProviderCatalog}.
+     * @param model the target OSLC discovery model.
+     * @param baseURI the base URI to create OSLC elements.
+     * @param name the warehouse name.
+     * @param resourceShapes the resource shapes built so far, by simple id;
+     * the ones built by this call are added.
+     */
+    public static void addServiceProvider(Model shacl,
+                                          String store,
+                                          Resource catalog,
+                                          Model model,
+                                          String baseURI,
+                                          String name,
+                                          Map<String, Resource> resourceShapes) {
 
-                Set<String> uniqueTypes = new HashSet<>();
-                Set<String> uniqueShapes = new HashSet<>();
+        Resource provider, service, factory, queryCapability;
+        Resource shaclShape, shaclTarget, resourceShape;
+        ResIterator shaclShapes;
+        String simpleId;
+        Statement statement;
 
-                uniqueTypes.clear();
-                uniqueShapes.clear();
+        Set<String> uniqueTypes = new HashSet<>();
+        Set<String> uniqueShapes = new HashSet<>();
 
-                LOG.info("@serviceProvider/{}", shaclGraph);
-                provider = model.createResource(Requests.buildURI(baseURI, OSLCModel.PATHS.PREFIX, name, OSLCModel.PATHS.SERVICE_PROVIDER, shaclGraph));
-                model.add(provider, RDF.type, OSLCModel.PROPS.SERVICE_PROVIDER.TYPE);
-                model.add(provider, DCTerms.title, shaclGraph);
-                model.add(provider, OSLCModel.PROPS.PATHS.DETAILS, Resources.buildResource(baseURI, OSLCModel.PATHS.PREFIX, name, OSLCModel.PATHS.SERVICE_PROVIDER, shaclGraph, "about"));
-                model.add(catalog, OSLCModel.PROPS.SERVICE_PROVIDER.PATH, provider);
+        LOG.info("@serviceProvider/{}", store);
+        provider = model.createResource(Requests.buildURI(baseURI, OSLCModel.PATHS.PREFIX, name, OSLCModel.PATHS.SERVICE_PROVIDER, store));
+        model.add(provider, RDF.type, OSLCModel.PROPS.SERVICE_PROVIDER.TYPE);
+        model.add(provider, DCTerms.title, store);
+        model.add(provider, OSLCModel.PROPS.PATHS.DETAILS, Resources.buildResource(baseURI, OSLCModel.PATHS.PREFIX, name, OSLCModel.PATHS.SERVICE_PROVIDER, store, "about"));
+        model.add(catalog, OSLCModel.PROPS.SERVICE_PROVIDER.PATH, provider);
 
-                shaclShapes = shacl.listResourcesWithProperty(RDF.type, SHACLModel.TYPES.NODE_SHAPE);
+        shaclShapes = shacl.listResourcesWithProperty(RDF.type, SHACLModel.TYPES.NODE_SHAPE);
 
-                while(shaclShapes.hasNext()) {
-                    service = model.createResource();
-                    model.add(service, RDF.type, OSLCModel.PROPS.SERVICE.TYPE);
+        while(shaclShapes.hasNext()) {
+            service = model.createResource();
+            model.add(service, RDF.type, OSLCModel.PROPS.SERVICE.TYPE);
 
-                    shaclShape = shaclShapes.next();
-                    LOG.info("@shaclShape/{}", shaclShape);
+            shaclShape = shaclShapes.next();
+            LOG.info("@shaclShape/{}", shaclShape);
 
-                    statement = shaclShape.getProperty(SHACLModel.PATHS.TARGET_CLASS);
-                    if (statement == null)
-                        shaclTarget = shaclShape;
-                    else
-                        shaclTarget = statement.getObject().asResource();
+            statement = shaclShape.getProperty(SHACLModel.PATHS.TARGET_CLASS);
+            if (statement == null)
+                shaclTarget = shaclShape;
+            else
+                shaclTarget = statement.getObject().asResource();
 
-                    statement = shaclShape.getProperty(RDFS.label);
-                    if (statement == null)
-                        simpleId = getSimpleId(shaclTarget.getURI());
-                    else
-                        simpleId = statement.getObject().asLiteral().getString();
+            statement = shaclShape.getProperty(RDFS.label);
+            if (statement == null)
+                simpleId = getSimpleId(shaclTarget.getURI());
+            else
+                simpleId = statement.getObject().asLiteral().getString();
 
-                    if (!uniqueShapes.add(simpleId))
-                        throw new IllegalStateException("Simple shape name '" + simpleId + "' is repeated on SHACL models (" + shaclShape.getURI() + "), use rdfs:label to create an alias.");
+            if (!uniqueShapes.add(simpleId))
+                throw new IllegalStateException("Simple shape name '" + simpleId + "' is repeated on SHACL models (" + shaclShape.getURI() + "), use rdfs:label to create an alias.");
 
-                    if (!uniqueTypes.add(shaclTarget.getURI()))
-                        throw new IllegalStateException("sh:targetClass '" + shaclTarget.getURI() + "' already defined, only one sh:NodeShape per sh:targetClass is allowed.");
+            if (!uniqueTypes.add(shaclTarget.getURI()))
+                throw new IllegalStateException("sh:targetClass '" + shaclTarget.getURI() + "' already defined, only one sh:NodeShape per sh:targetClass is allowed.");
 
-                    factory = model.createResource();
-                    LOG.info("@@creationFactory/{}", simpleId);
+            factory = model.createResource();
+            LOG.info("@@creationFactory/{}", simpleId);
 
-                    model.add(factory, RDF.type, OSLCModel.PROPS.CREATION_FACTORY.TYPE);
-                    model.add(factory, DCTerms.title, "Creation Factory for " + simpleId + " Resources.");
-                    model.add(factory, OSLCModel.PROPS.PATHS.CREATION, Resources.buildResource(baseURI, OSLCModel.PATHS.PREFIX, name, shaclGraph, simpleId));
-                    model.add(factory, OSLCModel.PROPS.PATHS.RESOURCE_TYPE, model.createResource(shaclTarget.getURI()));
+            model.add(factory, RDF.type, OSLCModel.PROPS.CREATION_FACTORY.TYPE);
+            model.add(factory, DCTerms.title, "Creation Factory for " + simpleId + " Resources.");
+            model.add(factory, OSLCModel.PROPS.PATHS.CREATION, Resources.buildResource(baseURI, OSLCModel.PATHS.PREFIX, name, store, simpleId));
+            model.add(factory, OSLCModel.PROPS.PATHS.RESOURCE_TYPE, model.createResource(shaclTarget.getURI()));
 
-                    resourceShape = resourceShapes.get(simpleId);
-                    if (resourceShape == null) {
-                        resourceShape = getResourceShape(simpleId, shaclTarget.getURI(), shaclShape, model, baseURI, name);
-                        resourceShapes.put(simpleId, resourceShape);
-                    }
+            resourceShape = resourceShapes.get(simpleId);
+            if (resourceShape == null) {
+                resourceShape = getResourceShape(simpleId, shaclTarget.getURI(), shaclShape, model, baseURI, name);
+                resourceShapes.put(simpleId, resourceShape);
+            }
 
-                    model.add(factory, OSLCModel.PROPS.RESOURCE_SHAPE.PATH, resourceShape);
-                    model.add(service, OSLCModel.PROPS.CREATION_FACTORY.PATH, factory);
+            model.add(factory, OSLCModel.PROPS.RESOURCE_SHAPE.PATH, resourceShape);
+            model.add(service, OSLCModel.PROPS.CREATION_FACTORY.PATH, factory);
 
-                    queryCapability = model.createResource();
-                    LOG.info("@@queryCapability/{}", simpleId);
+            queryCapability = model.createResource();
+            LOG.info("@@queryCapability/{}", simpleId);
 
-                    model.add(queryCapability, RDF.type, OSLCModel.PROPS.QUERY_CAPABILITY.TYPE);
-                    model.add(queryCapability, DCTerms.title, "Query Capability for " + simpleId + " Resources.");
-                    model.add(queryCapability, OSLCModel.PROPS.PATHS.QUERY_BASE, Resources.buildResource(baseURI, OSLCModel.PATHS.PREFIX, name, shaclGraph, simpleId));
-                    model.add(queryCapability, OSLCModel.PROPS.PATHS.RESOURCE_TYPE, model.createResource(shaclTarget.getURI()));
+            model.add(queryCapability, RDF.type, OSLCModel.PROPS.QUERY_CAPABILITY.TYPE);
+            model.add(queryCapability, DCTerms.title, "Query Capability for " + simpleId + " Resources.");
+            model.add(queryCapability, OSLCModel.PROPS.PATHS.QUERY_BASE, Resources.buildResource(baseURI, OSLCModel.PATHS.PREFIX, name, store, simpleId));
+            model.add(queryCapability, OSLCModel.PROPS.PATHS.RESOURCE_TYPE, model.createResource(shaclTarget.getURI()));
 
-                    model.add(service, OSLCModel.PROPS.QUERY_CAPABILITY.PATH, queryCapability);
-                    model.add(provider, OSLCModel.PROPS.SERVICE.PATH, service);
+            model.add(service, OSLCModel.PROPS.QUERY_CAPABILITY.PATH, queryCapability);
+            model.add(provider, OSLCModel.PROPS.SERVICE.PATH, service);
 
-                }
+        }
 
-                service = model.createResource();
-                model.add(service, RDF.type, OSLCModel.PROPS.SERVICE.TYPE);
+        service = model.createResource();
+        model.add(service, RDF.type, OSLCModel.PROPS.SERVICE.TYPE);
 
-                factory = model.createResource();
-                LOG.info("@@creationFactory/{}", "bulk loader");
+        factory = model.createResource();
+        LOG.info("@@creationFactory/{}", "bulk loader");
 
-                model.add(factory, RDF.type, OSLCModel.PROPS.CREATION_FACTORY.TYPE);
-                model.add(factory, DCTerms.title, "Bulk Loader Creation Factory");
-                model.add(factory, OSLCModel.PROPS.PATHS.CREATION, Resources.buildResource(baseURI, OSLCModel.PATHS.PREFIX, name, shaclGraph, "stores"));
-                model.add(service, OSLCModel.PROPS.CREATION_FACTORY.PATH, factory);
-                model.add(provider, OSLCModel.PROPS.SERVICE.PATH, service);
-            }
-        }
+        model.add(factory, RDF.type, OSLCModel.PROPS.CREATION_FACTORY.TYPE);
+        model.add(factory, DCTerms.title, "Bulk Loader Creation Factory");
+        model.add(factory, OSLCModel.PROPS.PATHS.CREATION, Resources.buildResource(baseURI, OSLCModel.PATHS.PREFIX, name, store, "stores"));
+        model.add(service, OSLCModel.PROPS.CREATION_FACTORY.PATH, factory);
+        model.add(provider, OSLCModel.PROPS.SERVICE.PATH, service);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,313 @@
+package com.ld4mbse.oslc4tdb.util;
+
+import com.ld4mbse.oslc4tdb.model.Environment;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.jena.atlas.RuntimeIOException;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.lang.LabelToNode;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.sparql.core.Quad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses line-based RDF files (N-Triples and N-Quads) in parallel. The file
+ * is split into chunks on line boundaries, each chunk is parsed on a shared
+ * {@link ForkJoinPool} and the parsed batches are handed, one at a time, to
+ * the destination stream on the calling thread; so the destination needs no
+ * synchronization and can write straight into a TDB transaction.
+ * @author rherrera
+ */
+public class ParallelParser {
+    /**
+     * Logger of this class.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelParser.class);
+    /**
+     * Minimum size in bytes of a chunk; smaller files are parsed sequentially.
+     */
+    private static final int MIN_CHUNK_SIZE = 8 * 1024 * 1024;
+    /**
+     * Maximum size in bytes of a chunk.
+     */
+    private static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+    /**
+     * Number of statements per batch handed to the destination.
+     */
+    private static final int BATCH_SIZE = 10000;
+    /**
+     * The number of parsing threads.
+     */
+    private static final int PARALLELISM = Environment.IMPORT_PARALLELISM > 0
+            ? Environment.IMPORT_PARALLELISM : Runtime.getRuntime().availableProcessors();
+    /**
+     * The parsing pool, shared by all parsers.
+     */
+    private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM);
+    /**
+     * Statements parsed from a chunk, in parsing order.
+     */
+    private static class Batch extends StreamRDFBase {
+        /**
+         * The parsed statements, either {@link Triple} or {@link Quad}.
+         */
+        private final List<Object> statements = new ArrayList<>(BATCH_SIZE);
+
+        @Override
+        public void triple(Triple triple) {
+            statements.add(triple);
+        }
+
+        @Override
+        public void quad(Quad quad) {
+            statements.add(quad);
+        }
+        /**
+         * Replays the parsed statements into a destination stream.
+         * @param destination the receiver of the statements.
+         */
+        private void replay(StreamRDF destination) {
+            for (Object statement : statements) {
+                if (statement instanceof Triple)
+                    destination.triple((Triple) statement);
+                else
+                    destination.quad((Quad) statement);
+            }
+        }
+    }
+    /**
+     * Marks the end of a chunk in the batches queue.
+     */
+    private static final Batch END = new Batch();
+    /**
+     * Determines whether a language can be parsed by this class.
+     * @param language the RDF serialization format.
+     * @return {@code true} if the language is N-Triples or N-Quads;
+     * {@code false} otherwise.
+     */
+    public static boolean supports(Lang language) {
+        return Lang.NTRIPLES.equals(language) || Lang.NQUADS.equals(language);
+    }
+    /**
+     * Parses a file into a destination stream. Files too small to be split
+     * are parsed sequentially. Blank node labels are scoped to the whole
+     * file, so equal labels in different chunks denote the same node. Since
+     * chunks are parsed concurrently, statements are not delivered in file
+     * order.
+     * @param file the N-Triples or N-Quads file.
+     * @param language the RDF serialization format of the file.
+     * @param destination the receiver of the parsed statements.
+     * @throws RuntimeIOException if the file cannot be read.
+     * @throws RiotException if the file has syntax errors.
+     */
+    public static void parse(File file, Lang language, StreamRDF destination) {
+        List<long[]> chunks;
+        List<Future<?>> tasks;
+        UUID seed = UUID.randomUUID();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(PARALLELISM * 2);
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            chunks = split(input.getChannel());
+        } catch (IOException ex) {
+            throw new RuntimeIOException(ex);
+        }
+        if (chunks.size() < 2 || PARALLELISM < 2) {
+            try (InputStream content = new BufferedInputStream(new FileInputStream(file))) {
+                Models.parse(content, null, language, destination);
+            } catch (IOException ex) {
+                throw new RuntimeIOException(ex);
+            }
+            return;
+        }
+        LOG.debug("{} parsed in {} chunks", file, chunks.size());
+        tasks = new ArrayList<>(chunks.size());
+        for (long[] chunk : chunks)
+            tasks.add(POOL.submit(() -> parse(file, chunk, language, seed, batches, cancelled)));
+        destination.start();
+        try {
+            for (int pending = chunks.size(); pending > 0;) {
+                Batch batch = take(batches, tasks);
+                if (batch == END) pending--;
+                else batch.replay(destination);
+            }
+            for (Future<?> task : tasks)
+                task.get();
+        } catch (ExecutionException ex) {
+            throw unwrap(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RiotException("Parsing of " + file + " interrupted");
+        } finally {
+            cancelled.set(true);
+            for (Future<?> task : tasks)
+                task.cancel(false);
+        }
+        destination.finish();
+    }
+    /**
+     * Waits for the next parsed batch, failing fast when a chunk could not
+     * be parsed.
+     * @param batches the parsed batches queue.
+     * @param tasks the chunk parsing tasks.
+     * @return the next parsed batch.
+     * @throws InterruptedException if the calling thread is interrupted.
+     * @throws ExecutionException if a chunk failed.
+     */
+    private static Batch take(BlockingQueue<Batch> batches, List<Future<?>> tasks)
+            throws InterruptedException, ExecutionException {
+        Batch batch;
+        while ((batch = batches.poll(100, TimeUnit.MILLISECONDS)) == null) {
+            for (Future<?> task : tasks)
+                if (task.isDone()) task.get();
+        }
+        return batch;
+    }
+    /**
+     * Parses a chunk of a file, queueing its statements in batches and then
+     * the {@link #END} mark. The mark is queued only if the whole chunk was
+     * parsed, so a failed chunk is reported by its task instead.
+     * @param file the file.
+     * @param chunk the start (inclusive) and end (exclusive) chunk offsets.
+     * @param language the RDF serialization format of the file.
+     * @param seed the file-wide blank node labels seed.
+     * @param batches the parsed batches queue.
+     * @param cancelled whether the whole parsing was abandoned.
+     */
+    private static void parse(File file, long[] chunk, Lang language, UUID seed,
+            BlockingQueue<Batch> batches, AtomicBoolean cancelled) {
+        byte[] content = new byte[(int)(chunk[1] - chunk[0])];
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            input.seek(chunk[0]);
+            input.readFully(content);
+        } catch (IOException ex) {
+            throw new RuntimeIOException(ex);
+        }
+        RDFParser.create()
+                .source(new ByteArrayInputStream(content))
+                .lang(language)
+                .labelToNode(LabelToNode.createScopeByDocumentHash(seed))
+                .parse(new StreamRDFBase() {
+                    private Batch batch = new Batch();
+
+                    @Override
+                    public void triple(Triple triple) {
+                        batch.triple(triple);
+                        flush(false);
+                    }
+
+                    @Override
+                    public void quad(Quad quad) {
+                        batch.quad(quad);
+                        flush(false);
+                    }
+
+                    @Override
+                    public void finish() {
+                        //also called when parsing fails
+                        flush(true);
+                    }
+
+                    private void flush(boolean last) {
+                        if (batch.statements.size() >= BATCH_SIZE || (last && !batch.statements.isEmpty())) {
+                            put(batches, batch, cancelled);
+                            batch = new Batch();
+                        }
+                    }
+                });
+        put(batches, END, cancelled);
+    }
+    /**
+     * Queues a batch, waiting for room if the consumer is behind.
+     * @param batches the parsed batches queue.
+     * @param batch the batch to queue.
+     * @param cancelled whether the whole parsing was abandoned.
+     * @throws CancellationException if the parsing was abandoned meanwhile.
+     */
+    private static void put(BlockingQueue<Batch> batches, Batch batch, AtomicBoolean cancelled) {
+        try {
+            while (!batches.offer(batch, 100, TimeUnit.MILLISECONDS))
+                if (cancelled.get()) throw new CancellationException();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RiotException("Chunk parsing interrupted");
+        }
+    }
+    /**
+     * Splits a file into chunks ending on line boundaries.
+     * @param channel the file channel.
+     * @return the start (inclusive) and end (exclusive) offsets of each chunk.
+     * @throws IOException if the file cannot be read.
+     */
+    private static List<long[]> split(FileChannel channel) throws IOException {
+        long start = 0, end, length = channel.size();
+        List<long[]> chunks = new ArrayList<>();
+        long size = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, length / (PARALLELISM * 4L)));
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (start < length) {
+            end = Math.min(length, start + size);
+            end = nextLine(channel, end, buffer);
+            chunks.add(new long[]{start, end});
+            start = end;
+        }
+        return chunks;
+    }
+    /**
+     * Finds the first line start at or after an offset.
+     * @param channel the file channel.
+     * @param offset the offset to search from.
+     * @param buffer a reusable read buffer.
+     * @return the offset right after the next line break, or the file length
+     * if there is none.
+     * @throws IOException if the file cannot be read.
+     */
+    private static long nextLine(FileChannel channel, long offset, ByteBuffer buffer) throws IOException {
+        long length = channel.size();
+        if (offset == 0 || offset >= length) return Math.min(offset, length);
+        offset--;
+        while (offset < length) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++)
+                if (buffer.get(i) == '\n') return offset + i + 1;
+            offset += read;
+        }
+        return length;
+    }
+    /**
+     * Unwraps the failure of a chunk parsing task.
+     * @param cause the task failure.
+     * @return the runtime exception to propagate.
+     */
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof RuntimeException)
+            return (RuntimeException) cause;
+        if (cause instanceof Error)
+            throw (Error) cause;
+        return new RiotException(cause);
+    }
+
+}
@@ -1,11 +1,16 @@
 package com.ld4mbse.oslc4tdb.util;
 
+import com.ld4mbse.oslc4tdb.rest.exception.QueryLimitException;
+import java.util.Iterator;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.QueryFactory;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
 
 /**
  * This class helps to encapsulates common SPARQL queries,
@@ -61,10 +66,65 @@ public class Queries {
      * @return the constructed model.
      */
     public static Model construct(String constructionQuery, Dataset target) {
-        Query query = QueryFactory.create(constructionQuery);
-        try(QueryExecution qe = QueryExecutionFactory.create(query, target)) {
+        return construct(QueryFactory.create(constructionQuery), target);
+    }
+
+    /**
+     * Executes an already built CONSTRUCT query against a target dataset.
+     * @param constructionQuery the query to execute.
+     * @param target the target dataset.
+     * @return the constructed model.
+     */
+    public static Model construct(Query constructionQuery, Dataset target) {
+        try(QueryExecution qe = QueryExecutionFactory.create(constructionQuery, target)) {
             return qe.execConstruct();
         }
     }
 
+    /**
+     * Creates the execution of a query that is cancelled at a deadline.
+     * @param query the query to execute.
+     * @param target the target dataset.
+     * @param deadline the time, in milliseconds, at which the execution is
+     * cancelled; zero for no deadline.
+     * @return the query execution, throwing a
+     * {@link org.apache.jena.query.QueryCancelledException} once cancelled.
+     */
+    public static QueryExecution create(Query query, Dataset target, long deadline) {
+        QueryExecution qe = QueryExecutionFactory.create(query, target);
+        if (deadline > 0)
+            qe.setTimeout(Math.max(1, deadline - System.currentTimeMillis()));
+        return qe;
+    }
+
+    /**
+     * Executes an already built CONSTRUCT query against a target dataset,
+     * within a deadline and a maximum number of constructed triples.
+     * @param constructionQuery the query to execute.
+     * @param target the target dataset.
+     * @param deadline the time, in milliseconds, at which the execution is
+     * cancelled; zero for no deadline.
+     * @param maxTriples the maximum number of constructed triples; zero or
+     * negative for no limit.
+     * @return the constructed model.
+     * @throws QueryLimitException if more than {@code maxTriples} triples
+     * are constructed.
+     */
+    public static Model construct(Query constructionQuery, Dataset target, long deadline, long maxTriples) {
+        Iterator<Triple> triples;
+        Model model = ModelFactory.createDefaultModel();
+        Graph graph = model.getGraph();
+        try(QueryExecution qe = create(constructionQuery, target, deadline)) {
+            triples = qe.execConstructTriples();
+            while (triples.hasNext()) {
+                graph.add(triples.next());
+                if (maxTriples > 0 && graph.size() > maxTriples)
+                    throw new QueryLimitException("The query response exceeds " + maxTriples
+                            + " triples; narrow it down with oslc.where or page it with oslc.paging.");
+            }
+        }
+        model.setNsPrefixes(constructionQuery.getPrefixMapping());
+        return model;
+    }
+
  }
\ No newline at end of file
@@ -0,0 +1,140 @@
+package com.ld4mbse.oslc4tdb.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A thread-safe cache of values expensive to build. Each value is built by
+ * a single thread, however many threads miss it at the same time: the others
+ * wait for that build. Once a value is invalidated, it keeps being served
+ * while it is rebuilt, and the rebuilt one replaces it only when complete.
+ * Builders may derive the rebuilt value from the previous one.
+ * @param <K> the type of keys.
+ * @param <V> the type of values.
+ * @author rherrera
+ */
+public class RebuildingCache<K, V> {
+    /**
+     * The state of a cached key. Guarded by its own monitor.
+     */
+    private static class Entry<V> {
+        /**
+         * The last built value; {@code null} if not built yet.
+         */
+        private V value;
+        /**
+         * The number of invalidations of this key.
+         */
+        private long generation;
+        /**
+         * The generation the value was built for.
+         */
+        private long built;
+        /**
+         * The build in progress, if any.
+         */
+        private FutureTask<V> build;
+    }
+    /**
+     * The entries, by key.
+     */
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    /**
+     * Builds the value of a key from its previous value.
+     */
+    private final BiFunction<? super K, ? super V, ? extends V> builder;
+    /**
+     * Constructs an instance specifying how to build the values.
+     * @param builder builds the value of a key; must not return {@code null}.
+     */
+    public RebuildingCache(Function<? super K, ? extends V> builder) {
+        this((K key, V previous) -> builder.apply(key));
+    }
+    /**
+     * Constructs an instance specifying how to rebuild the values.
+     * @param builder builds the value of a key given its previous value,
+     * {@code null} on the first build; must not return {@code null}.
+     */
+    public RebuildingCache(BiFunction<? super K, ? super V, ? extends V> builder) {
+        this.builder = builder;
+    }
+    /**
+     * Gets the value of a key. If it is not built, it is built by this
+     * thread or, if another thread is already building it, by that one. If
+     * it is invalidated and another thread is rebuilding it, the previous
+     * value is returned.
+     * @param key the key.
+     * @return the value of the key.
+     * @throws RuntimeException if the value could not be built.
+     */
+    public V get(K key) {
+        V previous;
+        long generation;
+        FutureTask<V> build;
+        boolean owner = false;
+        Entry<V> entry = entries.computeIfAbsent(key, (k) -> new Entry<>());
+        synchronized (entry) {
+            if (entry.value != null && (entry.built == entry.generation || entry.build != null))
+                return entry.value;
+            generation = entry.generation;
+            if (entry.build == null) {
+                previous = entry.value;
+                entry.build = new FutureTask<>(() -> builder.apply(key, previous));
+                owner = true;
+            }
+            build = entry.build;
+        }
+        if (owner) {
+            build.run();
+            synchronized (entry) {
+                entry.build = null;
+                try {
+                    entry.value = build.get();
+                    entry.built = generation;
+                } catch (InterruptedException | ExecutionException ex) {
+                    //reported below, the previous value is kept
+                }
+            }
+        }
+        return await(build);
+    }
+    /**
+     * Waits for a build to complete.
+     * @param build the build.
+     * @return the built value.
+     * @throws RuntimeException if the build failed.
+     */
+    private V await(FutureTask<V> build) {
+        try {
+            return build.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            if (ex.getCause() instanceof Error)
+                throw (Error) ex.getCause();
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+    /**
+     * Invalidates the value of a key, so the next lookup rebuilds it. A
+     * build already in progress is not taken for the rebuilt value, since
+     * it may not reflect the change.
+     * @param key the key.
+     */
+    public void invalidate(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.generation++;
+            }
+        }
+    }
+
+}
@@ -1,11 +1,18 @@
 package com.ld4mbse.oslc4tdb.util;
 
+import com.ld4mbse.oslc4tdb.model.Environment;
+import com.ld4mbse.oslc4tdb.rest.exception.RequestTooLargeException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
+import javax.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,6 +56,82 @@ public class Requests {
         }
     }
 
+    /**
+     * Input stream failing once more than {@link Environment#REQUEST_MAX_SIZE}
+     * bytes have been read.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        /**
+         * Number of bytes read so far.
+         */
+        private long count;
+        /**
+         * Constructs an instance specifying the underlying stream.
+         * @param in the underlying stream.
+         */
+        private LimitedInputStream(InputStream in) {
+            super(in);
+        }
+        /**
+         * Accounts some bytes read.
+         * @param read the number of bytes read.
+         * @throws RequestTooLargeException if the size limit is exceeded.
+         */
+        private void count(long read) {
+            if (read > 0) {
+                count += read;
+                if (Environment.REQUEST_MAX_SIZE >= 0 && count > Environment.REQUEST_MAX_SIZE)
+                    throw new RequestTooLargeException("Request body exceeds " + Environment.REQUEST_MAX_SIZE + " bytes");
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read >= 0) count(1);
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            count(read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+    }
+
+    /**
+     * Gets the body of a request as a stream, without buffering it. Reading
+     * more than {@link Environment#REQUEST_MAX_SIZE} bytes from the returned
+     * stream throws a {@link RequestTooLargeException}.
+     * @param request the HTTP request.
+     * @return the request body; {@code null} if the request has no body.
+     * @throws IOException if the body cannot be read.
+     * @throws RequestTooLargeException if the declared body length exceeds
+     * the maximum size.
+     */
+    public static InputStream getContent(HttpServletRequest request) throws IOException {
+        int first;
+        PushbackInputStream content;
+        long length = request.getContentLengthLong();
+        if (Environment.REQUEST_MAX_SIZE >= 0 && length > Environment.REQUEST_MAX_SIZE)
+            throw new RequestTooLargeException("Request body exceeds " + Environment.REQUEST_MAX_SIZE + " bytes");
+        if (length == 0 || request.getInputStream() == null)
+            return null;
+        content = new PushbackInputStream(new LimitedInputStream(request.getInputStream()));
+        if ((first = content.read()) < 0)
+            return null;
+        content.unread(first);
+        return content;
+    }
+
     /**
      * Gets the values of an HTTP header sorted in descending fashion according
      * to their quality parameter. Values closer to quality 1.0 comes first.
@@ -18,12 +18,21 @@ public class Resources {
      * @return the ETag value.
      */
     public static String getETag(String object) {
+        return getETag(object.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Generates the ETag value of a serialized content.
+     *
+     * @param content the serialized content.
+     * @return the ETag value.
+     */
+    public static String getETag(byte[] content) {
         try {
             MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] bytes = object.getBytes(StandardCharsets.UTF_8);
-            return new BigInteger(1, md.digest(bytes)).toString(16);
+            return new BigInteger(1, md.digest(content)).toString(16);
         } catch (NoSuchAlgorithmException ex) {
-            throw new IllegalStateException("Could not compute ETag for " + object, ex);
+            throw new IllegalStateException("Could not compute ETag", ex);
         }
     }
 
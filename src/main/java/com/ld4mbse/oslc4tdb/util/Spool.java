@@ -0,0 +1,115 @@
+package com.ld4mbse.oslc4tdb.util;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import org.apache.jena.atlas.RuntimeIOException;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.system.StreamRDF;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An RDF payload spilled to a temporary file, so it can be parsed more than
+ * once without holding it in memory. Closing the spool deletes the file.
+ * @author rherrera
+ */
+public class Spool implements Closeable {
+    /**
+     * Logger of this class.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(Spool.class);
+    /**
+     * The temporary file.
+     */
+    private final File file;
+    /**
+     * The RDF serialization format of the content.
+     */
+    private final Lang language;
+    /**
+     * The base URL to resolve relative paths.
+     */
+    private final String base;
+    /**
+     * Constructs an instance specifying its content.
+     * @param file the temporary file.
+     * @param language the RDF serialization format of the content.
+     * @param base the base URL to resolve relative paths.
+     */
+    private Spool(File file, Lang language, String base) {
+        this.file = file;
+        this.language = language;
+        this.base = base;
+    }
+    /**
+     * Spills an input stream into a new temporary file.
+     * @param content the input stream; it is read to its end but not closed.
+     * @param language the RDF serialization format of the content.
+     * @param base the base URL to resolve relative paths.
+     * @return the spool holding the content.
+     * @throws IOException if the content cannot be copied.
+     */
+    public static Spool of(InputStream content, Lang language, String base) throws IOException {
+        String extension = language.getFileExtensions().isEmpty() ? "rdf" : language.getFileExtensions().get(0);
+        File file = File.createTempFile("oslc4tdb-", "." + extension);
+        try {
+            Files.copy(content, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(file.toPath());
+            throw ex;
+        }
+        LOG.debug("{} bytes spooled into {}", file.length(), file);
+        return new Spool(file, language, base);
+    }
+    /**
+     * Gets the temporary file.
+     * @return the temporary file.
+     */
+    public File getFile() {
+        return file;
+    }
+    /**
+     * Gets the RDF serialization format of the content.
+     * @return the RDF serialization format of the content.
+     */
+    public Lang getLanguage() {
+        return language;
+    }
+    /**
+     * Gets the base URL to resolve relative paths.
+     * @return the base URL to resolve relative paths.
+     */
+    public String getBase() {
+        return base;
+    }
+    /**
+     * Parses the whole content into a destination stream. N-Triples and
+     * N-Quads content is parsed by a {@link ParallelParser}, so statements
+     * may not be delivered in file order.
+     * @param destination the receiver of the parsed statements.
+     * @throws RuntimeIOException if the file cannot be read.
+     */
+    public void parse(StreamRDF destination) {
+        if (ParallelParser.supports(language)) {
+            ParallelParser.parse(file, language, destination);
+            return;
+        }
+        try (InputStream content = new BufferedInputStream(new FileInputStream(file))) {
+            Models.parse(content, base, language, destination);
+        } catch (IOException ex) {
+            throw new RuntimeIOException(ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+}
@@ -0,0 +1,276 @@
+package com.ld4mbse.oslc4tdb.util;
+
+import com.ld4mbse.oslc4tdb.model.Environment;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import org.apache.jena.atlas.RuntimeIOException;
+import org.apache.jena.datatypes.RDFDatatype;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.datatypes.xsd.impl.RDFLangString;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.query.text.DatasetGraphText;
+import org.apache.jena.query.text.Entity;
+import org.apache.jena.query.text.EntityDefinition;
+import org.apache.jena.query.text.TextDatasetFactory;
+import org.apache.jena.query.text.TextDocProducer;
+import org.apache.jena.query.text.TextIndex;
+import org.apache.jena.query.text.TextIndexConfig;
+import org.apache.jena.query.text.TextIndexLucene;
+import org.apache.jena.query.text.TextQuery;
+import org.apache.jena.query.text.TextQueryFuncs;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.QuadAction;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a Lucene full-text index over the string literals of each warehouse,
+ * at {@code <TDB_LOCATION>/<warehouse>/text}. Warehouse datasets are wrapped
+ * so every transactional write updates the index when committed, and
+ * queries can match literals through the {@code text:query} property
+ * function, which binds the subjects and their relevance score.
+ * @author rherrera
+ */
+public class TextIndexes {
+    /**
+     * Logger of this class.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(TextIndexes.class);
+    /**
+     * The {@code text:query} property function.
+     */
+    public static final Node QUERY = NodeFactory.createURI(TextQuery.NS + "query");
+    /**
+     * The index directory name, within the warehouse directory.
+     */
+    private static final String DIRECTORY = "text";
+    /**
+     * Suffix of the index directory name marking a completely built index.
+     */
+    private static final String COMPLETE = ".complete";
+    /**
+     * The index field holding the subjects.
+     */
+    private static final String SUBJECT_FIELD = "uri";
+    /**
+     * The index field holding the literals.
+     */
+    private static final String TEXT_FIELD = "text";
+    /**
+     * The index field holding the graph names.
+     */
+    private static final String GRAPH_FIELD = "graph";
+    /**
+     * The index field identifying each statement.
+     */
+    private static final String UID_FIELD = "uid";
+
+    static {
+        TextQuery.init();
+    }
+    /**
+     * Indexes every added or deleted string literal, regardless of its
+     * predicate.
+     */
+    private static class LiteralsProducer implements TextDocProducer {
+        /**
+         * The target index.
+         */
+        private final TextIndex index;
+
+        private LiteralsProducer(TextIndex index) {
+            this.index = index;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void change(QuadAction action, Node graph, Node subject, Node predicate, Node object) {
+            Entity entity = getEntity(graph, subject, object);
+            if (entity == null)
+                return;
+            if (action == QuadAction.ADD)
+                index.addEntity(entity);
+            else if (action == QuadAction.DELETE)
+                index.deleteEntity(entity);
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        public void reset() {
+        }
+    }
+    /**
+     * Wraps a warehouse dataset so its writes are indexed. The index is not
+     * built here; call {@link #build(java.lang.String, org.apache.jena.query.Dataset)}
+     * before querying it.
+     * @param warehouse the warehouse name.
+     * @param dataset the warehouse TDB dataset.
+     * @return the indexed dataset.
+     */
+    public static Dataset wrap(String warehouse, Dataset dataset) {
+        Directory directory;
+        TextIndex index;
+        EntityDefinition definition = new EntityDefinition(SUBJECT_FIELD, TEXT_FIELD);
+        File location = new File(Environment.TDB_LOCATION + File.separator + warehouse, DIRECTORY);
+        TextIndexConfig config = new TextIndexConfig(definition);
+        definition.setGraphField(GRAPH_FIELD);
+        definition.setUidField(UID_FIELD);
+        config.setAnalyzer(new StandardAnalyzer());
+        try {
+            directory = FSDirectory.open(location.toPath());
+            index = TextDatasetFactory.createLuceneIndex(directory, config);
+        } catch (IOException ex) {
+            TDBFactory.release(dataset);
+            throw new RuntimeIOException(ex);
+        } catch (RuntimeException ex) {
+            TDBFactory.release(dataset);
+            throw ex;
+        }
+        return TextDatasetFactory.create(dataset, index, true, new LiteralsProducer(index));
+    }
+    /**
+     * Builds the index of a wrapped warehouse dataset from its current
+     * content, unless a previous build completed. An index whose build did
+     * not complete is discarded and built again; completion is recorded by
+     * a marker file next to the index directory, written once the built
+     * index is committed.
+     * @param warehouse the warehouse name.
+     * @param dataset the wrapped warehouse dataset.
+     */
+    public static void build(String warehouse, Dataset dataset) {
+        long count = 0;
+        Quad quad;
+        Entity entity;
+        Iterator<Quad> quads;
+        TextIndex index = getIndex(dataset);
+        File complete = new File(Environment.TDB_LOCATION + File.separator + warehouse, DIRECTORY + COMPLETE);
+        if (index == null || complete.isFile())
+            return;
+        try {
+            ((TextIndexLucene) index).getIndexWriter().deleteAll();
+        } catch (IOException ex) {
+            throw new RuntimeIOException(ex);
+        }
+        dataset.begin(ReadWrite.READ);
+        try {
+            quads = dataset.asDatasetGraph().find();
+            while (quads.hasNext()) {
+                quad = quads.next();
+                entity = getEntity(quad.getGraph(), quad.getSubject(), quad.getObject());
+                if (entity != null) {
+                    index.addEntity(entity);
+                    count++;
+                }
+            }
+        } finally {
+            dataset.end();
+        }
+        index.prepareCommit();
+        index.commit();
+        try {
+            if (!complete.createNewFile())
+                LOG.warn("{} already exists", complete);
+        } catch (IOException ex) {
+            throw new RuntimeIOException(ex);
+        }
+        LOG.info("{} text index built with {} literals", warehouse, count);
+    }
+    /**
+     * Indexes the statements of a graph written bypassing transactions, as
+     * the TDB bulk loader does. Statements already indexed are not
+     * duplicated.
+     * @param dataset the acquired warehouse dataset.
+     * @param graph the written graph.
+     */
+    public static void index(Dataset dataset, Node graph) {
+        Triple triple;
+        Entity entity;
+        Iterator<Triple> triples;
+        TextIndex index = getIndex(dataset);
+        if (index == null)
+            return;
+        dataset.begin(ReadWrite.READ);
+        try {
+            triples = dataset.asDatasetGraph().getGraph(graph).find();
+            while (triples.hasNext()) {
+                triple = triples.next();
+                entity = getEntity(graph, triple.getSubject(), triple.getObject());
+                if (entity != null) {
+                    index.deleteEntity(entity);
+                    index.addEntity(entity);
+                }
+            }
+        } finally {
+            dataset.end();
+        }
+        index.prepareCommit();
+        index.commit();
+    }
+    /**
+     * Gets the text index of a warehouse dataset.
+     * @param dataset the warehouse dataset.
+     * @return the text index; {@code null} if the dataset is not indexed.
+     */
+    private static TextIndex getIndex(Dataset dataset) {
+        DatasetGraph graph = dataset.asDatasetGraph();
+        return graph instanceof DatasetGraphText ? ((DatasetGraphText) graph).getTextIndex() : null;
+    }
+    /**
+     * Releases a warehouse dataset, closing its text index.
+     * @param dataset the warehouse dataset, indexed or not.
+     */
+    public static void release(Dataset dataset) {
+        DatasetGraph graph = dataset.asDatasetGraph();
+        if (graph instanceof DatasetGraphText) {
+            ((DatasetGraphText) graph).getTextIndex().close();
+            graph = ((DatasetGraphText) graph).getWrapped();
+        }
+        TDBFactory.release(graph);
+    }
+    /**
+     * Builds the index document of a statement.
+     * @param graph the statement graph.
+     * @param subject the statement subject.
+     * @param object the statement object.
+     * @return the index document; {@code null} if the object is not a
+     * string literal.
+     */
+    private static Entity getEntity(Node graph, Node subject, Node object) {
+        Entity entity;
+        RDFDatatype type;
+        if (!object.isLiteral())
+            return null;
+        type = object.getLiteralDatatype();
+        if (!XSDDatatype.XSDstring.equals(type) && !RDFLangString.rdfLangString.equals(type))
+            return null;
+        entity = new Entity(TextQueryFuncs.subjectToString(subject), TextQueryFuncs.graphNodeToString(graph));
+        entity.put(TEXT_FIELD, object.getLiteralLexicalForm());
+        return entity;
+    }
+    /**
+     * Quotes a text as a Lucene phrase, so it is matched literally instead
+     * of being parsed as a Lucene query.
+     * @param text the text.
+     * @return the quoted phrase.
+     */
+    public static String phrase(String text) {
+        return '"' + text.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+}
@@ -3,6 +3,7 @@ package com.ld4mbse.oslc4tdb.util;
 import com.ld4mbse.oslc4tdb.model.Environment;
 
 import java.io.*;
+import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 
 import com.ld4mbse.oslc4tdb.rest.exception.IllegalStoreException;
@@ -11,7 +12,6 @@ import org.apache.commons.lang3.SystemUtils;
 import org.apache.jena.atlas.RuntimeIOException;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.tdb.StoreConnection;
-import org.apache.jena.tdb.TDB;
 import org.apache.jena.tdb.TDBFactory;
 import org.apache.jena.tdb.base.block.FileMode;
 import org.apache.jena.tdb.base.file.Location;
@@ -23,6 +23,8 @@ public class Warehouses {
 
     private static final Logger LOG = LoggerFactory.getLogger(Warehouses.class);
 
+    private static final String SETTINGS = "query.properties";
+
     public static String[] list() {
         File location = new File(Environment.TDB_LOCATION);
         String[] stores = location.list(new FilenameFilter() {
@@ -36,10 +38,29 @@ public class Warehouses {
 
     public static Dataset get(String name) {
         if (exist(name))
-            return TDBFactory.createDataset(Environment.TDB_LOCATION + File.separator + name);
+            return TextIndexes.wrap(name, TDBFactory.createDataset(Environment.TDB_LOCATION + File.separator + name));
         throw new IllegalStoreException("The " + name + " warehouse does not exists in this server.");
     }
 
+    /**
+     * Reads the settings of a warehouse, kept in the {@code query.properties}
+     * file of its directory.
+     * @param name the warehouse name.
+     * @return the warehouse settings; empty if the file does not exist.
+     */
+    public static Properties getSettings(String name) {
+        Properties settings = new Properties();
+        File file = new File(Environment.TDB_LOCATION + File.separator + name, SETTINGS);
+        if (file.isFile()) {
+            try (InputStream input = new FileInputStream(file)) {
+                settings.load(input);
+            } catch (IOException ex) {
+                throw new RuntimeIOException(ex);
+            }
+        }
+        return settings;
+    }
+
     public static boolean exist(String name) {
         String location = Environment.TDB_LOCATION + File.separator + name;
         File store = new File(location);
@@ -53,9 +74,9 @@ public class Warehouses {
 
         location = new File(Environment.TDB_LOCATION + File.separator + name);
 
+        Connections.close(name);
         Location dsLocation = Location.create(location.getAbsolutePath());
         StoreConnection.expel(dsLocation, true);
-        TDB.closedown();
 
         if (SystemUtils.IS_OS_WINDOWS) {
             System.gc();
@@ -92,6 +113,8 @@ public class Warehouses {
     }
 
     public static boolean isLocked(String catalog) {
+        if (Connections.isOpen(catalog))
+            return Connections.isReferenced(catalog);
         String location = Environment.TDB_LOCATION + File.separator + catalog;
 
         File catalogs = new File(location);
@@ -1,6 +1,7 @@
 package com.ld4mbse.oslc4tdb.web;
 
 import com.ld4mbse.oslc4tdb.model.Environment;
+import com.ld4mbse.oslc4tdb.util.Connections;
 import java.io.File;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
@@ -62,7 +63,7 @@ public class ApplicationListener implements ServletContextListener {
 
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
-
+        Connections.closeAll();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package com.ld4mbse.oslc4tdb.model;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.vocabulary.RDFS;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests cases for {@link DiscoveryDocument}.
+ * @author rherrera
+ */
+public class DiscoveryDocumentTest {
+
+    private Model describe(String label) {
+        Model model = ModelFactory.createDefaultModel();
+        model.createResource("urn:catalog").addProperty(RDFS.label, label);
+        return model;
+    }
+
+    @Test
+    public void testGetETag() {
+        DiscoveryDocument document = new DiscoveryDocument(describe("a"), Lang.TURTLE);
+        assertTrue(document.getETag().startsWith("\""));
+        assertTrue(document.getETag().endsWith("\""));
+        assertEquals(document.getETag(), new DiscoveryDocument(describe("a"), Lang.TURTLE).getETag());
+        assertNotEquals(document.getETag(), new DiscoveryDocument(describe("b"), Lang.TURTLE).getETag());
+        assertNotEquals(document.getETag(), new DiscoveryDocument(describe("a"), Lang.RDFXML).getETag());
+    }
+
+    @Test
+    public void testMatches() {
+        DiscoveryDocument document = new DiscoveryDocument(describe("a"), Lang.TURTLE);
+        String etag = document.getETag();
+        assertFalse(document.matches(null));
+        assertFalse(document.matches("\"other\""));
+        assertTrue(document.matches(etag));
+        assertTrue(document.matches("W/" + etag));
+        assertTrue(document.matches("\"other\", " + etag));
+        assertTrue(document.matches("*"));
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.ld4mbse.oslc4tdb.model;
+
+import com.ld4mbse.oslc4tdb.services.TDBManager;
+import com.ld4mbse.oslc4tdb.util.Connections;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests cases for {@link OSLCManager}.
+ * @author rherrera
+ */
+public class OSLCManagerTest {
+    /**
+     * The warehouse name.
+     */
+    private static final String WAREHOUSE = "oslc";
+    /**
+     * The Person type.
+     */
+    private static final Resource PERSON = ResourceFactory.createResource("http://xmlns.com/foaf/0.1/Person");
+    /**
+     * The Cat type.
+     */
+    private static final Resource CAT = ResourceFactory.createResource("http://xmlns.com/foaf/0.1/Cat");
+    /**
+     * The warehouse directory.
+     */
+    private File directory;
+    /**
+     * The manager writing the warehouse.
+     */
+    private TDBManager tdbManager;
+    /**
+     * The manager under test.
+     */
+    private OSLCManager oslcManager;
+
+    @Before
+    public void init() {
+        directory = new File(Environment.TDB_LOCATION, WAREHOUSE);
+        directory.mkdirs();
+        tdbManager = new TDBManager();
+        oslcManager = new OSLCManager("http://example.com/context/rest/", tdbManager);
+    }
+
+    @After
+    public void clean() throws IOException {
+        Connections.close(WAREHOUSE);
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private Model family() {
+        Model family = ModelFactory.createDefaultModel();
+        InputStream stream = Thread.currentThread().getContextClassLoader().getResourceAsStream("family.ttl");
+        RDFDataMgr.read(family, stream, Lang.TURTLE);
+        return family;
+    }
+
+    private Model pets() {
+        Model pets = ModelFactory.createDefaultModel();
+        Resource shape = pets.createResource("urn:CatShape");
+        pets.add(shape, RDF.type, SHACLModel.TYPES.NODE_SHAPE);
+        pets.add(shape, SHACLModel.PATHS.TARGET_CLASS, CAT);
+        return pets;
+    }
+
+    @Test
+    public void testGetShape_AfterWrites() {
+        tdbManager.setSHACLModel(WAREHOUSE, family(), "urn:family");
+        assertNotNull(oslcManager.getShape(WAREHOUSE, PERSON));
+        assertNull(oslcManager.getShape(WAREHOUSE, CAT));
+        tdbManager.setSHACLModel(WAREHOUSE, pets(), "urn:pets");
+        assertNotNull(oslcManager.getShape(WAREHOUSE, CAT));
+        assertNotNull(oslcManager.getShape(WAREHOUSE, PERSON));
+        tdbManager.removeModel(WAREHOUSE, "urn:pets-shacl");
+        assertNull(oslcManager.getShape(WAREHOUSE, CAT));
+        assertNotNull(oslcManager.getCreationFactory(WAREHOUSE, PERSON.getURI(), "family"));
+    }
+
+}
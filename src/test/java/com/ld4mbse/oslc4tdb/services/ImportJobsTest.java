@@ -0,0 +1,104 @@
+package com.ld4mbse.oslc4tdb.services;
+
+import com.ld4mbse.oslc4tdb.model.Environment;
+import com.ld4mbse.oslc4tdb.util.Spool;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.jena.riot.Lang;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for {@link ImportJobs}.
+ * @author rherrera
+ */
+public class ImportJobsTest {
+
+    private RDFManager manager;
+    private ImportJobs jobs;
+
+    @Before
+    public void init() {
+        manager = mock(RDFManager.class);
+        jobs = new ImportJobs(manager);
+        jobs.init();
+    }
+
+    @After
+    public void clean() {
+        jobs.destroy();
+    }
+
+    private Spool getContent() throws IOException {
+        byte[] content = "<urn:a> <urn:b> <urn:c> .\n".getBytes();
+        return Spool.of(new ByteArrayInputStream(content), Lang.NTRIPLES, null);
+    }
+
+    private void await(ImportJob job) throws InterruptedException {
+        for (int i = 0; i < 100 && !job.isFinished(); i++)
+            Thread.sleep(50);
+    }
+
+    @Test
+    public void testSubmit_Committed() throws IOException, InterruptedException {
+        Spool content = getContent();
+        ImportJob job = jobs.submit("warehouse", "store", content, false);
+        assertSame(job, jobs.get(job.getId()));
+        await(job);
+        assertEquals(ImportJob.State.COMMITTED, job.getState());
+        assertFalse(content.getFile().exists());
+    }
+
+    @Test
+    public void testSubmit_Failed() throws IOException, InterruptedException {
+        doThrow(new IllegalStateException("SHACL Models are being updated"))
+                .when(manager).mergeModel(eq("warehouse"), any(), eq("urn:store"), any());
+        ImportJob job = jobs.submit("warehouse", "store", getContent(), false);
+        await(job);
+        assertEquals(ImportJob.State.FAILED, job.getState());
+        assertTrue(job.getError().startsWith("SHACL"));
+    }
+
+    @Test
+    public void testSubmit_Aborted() throws IOException, InterruptedException {
+        doThrow(new OutOfMemoryError("Java heap space"))
+                .when(manager).mergeModel(eq("warehouse"), any(), eq("urn:store"), any());
+        ImportJob job = jobs.submit("warehouse", "store", getContent(), false);
+        await(job);
+        assertEquals(ImportJob.State.FAILED, job.getState());
+        assertEquals("The import was aborted", job.getError());
+    }
+
+    @Test
+    public void testDestroy_RejectsQueued() throws IOException, InterruptedException {
+        int workers = Math.max(1, Environment.IMPORT_WORKERS);
+        CountDownLatch started = new CountDownLatch(workers);
+        doAnswer((invocation) -> {
+            started.countDown();
+            Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            return null;
+        }).when(manager).mergeModel(eq("warehouse"), any(), eq("urn:store"), any());
+        for (int i = 0; i < workers; i++)
+            jobs.submit("warehouse", "store", getContent(), false);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Spool content = getContent();
+        ImportJob queued = jobs.submit("warehouse", "store", content, false);
+        jobs.destroy();
+        assertEquals(ImportJob.State.FAILED, queued.getState());
+        assertEquals("The import service is shutting down", queued.getError());
+        assertFalse(content.getFile().exists());
+    }
+
+}
@@ -1,16 +1,510 @@
 package com.ld4mbse.oslc4tdb.services;
 
+import com.ld4mbse.oslc4tdb.model.Environment;
+import com.ld4mbse.oslc4tdb.model.OSLCModel;
+import com.ld4mbse.oslc4tdb.rest.exception.QueryLimitException;
+import com.ld4mbse.oslc4tdb.tdb.query.QueryCriteria;
+import com.ld4mbse.oslc4tdb.util.Connections;
+import com.ld4mbse.oslc4tdb.util.Spool;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.apache.jena.vocabulary.XSD;
+import org.junit.After;
 import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Tests for {@link TDBManager}.
  * @author rherrera
  */
 public class TDBManagerTest {
+    /**
+     * The warehouse name.
+     */
+    private static final String WAREHOUSE = "manager";
+    /**
+     * The store graph name.
+     */
+    private static final String STORE = "urn:family";
+    /**
+     * The warehouse directory.
+     */
+    private File directory;
+    /**
+     * The loaded family model.
+     */
+    private Model family;
+    /**
+     * The manager under test.
+     */
+    private TDBManager manager;
 
     @Before
     public void init() {
-    
+        Dataset dataset;
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        InputStream stream = loader.getResourceAsStream("family.ttl");
+        directory = new File(Environment.TDB_LOCATION, WAREHOUSE);
+        directory.mkdirs();
+        family = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(family, stream, Lang.TURTLE);
+        dataset = Connections.acquire(WAREHOUSE);
+        dataset.begin(ReadWrite.WRITE);
+        try {
+            dataset.addNamedModel(STORE, family);
+            dataset.commit();
+        } finally {
+            dataset.end();
+            Connections.release(WAREHOUSE);
+        }
+        manager = new TDBManager();
+    }
+
+    @After
+    public void clean() throws IOException {
+        Connections.close(WAREHOUSE);
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private Model read(byte[] content, Lang lang) {
+        Model model = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(model, new ByteArrayInputStream(content), lang);
+        return model;
+    }
+
+    @Test
+    public void testWriteModel_NTriples() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertTrue(manager.writeModel(WAREHOUSE, STORE, Lang.NTRIPLES, output));
+        assertTrue(family.isIsomorphicWith(read(output.toByteArray(), Lang.NTRIPLES)));
+    }
+
+    @Test
+    public void testWriteModel_Turtle() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertTrue(manager.writeModel(WAREHOUSE, STORE, Lang.TURTLE, output));
+        assertTrue(family.isIsomorphicWith(read(output.toByteArray(), Lang.TURTLE)));
+    }
+
+    @Test
+    public void testWriteModel_Empty() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertFalse(manager.writeModel(WAREHOUSE, "urn:missing", Lang.NTRIPLES, output));
+        assertEquals(0, output.size());
+    }
+
+    @Test
+    public void testWriteModels() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DatasetGraph exported = DatasetGraphFactory.createGeneral();
+        importModels("<urn:family> { <urn:Cat> <http://www.w3.org/2000/01/rdf-schema#label> \"Cat\" }", new ImportReport());
+        assertEquals(family.size() + 2, manager.writeModels(WAREHOUSE, output));
+        RDFDataMgr.read(exported, new ByteArrayInputStream(output.toByteArray()), Lang.NQUADS);
+        assertTrue(new String(output.toByteArray()).startsWith("<http://www.w3.org/2000/01/rdf-schema#Resource>"));
+        assertEquals(1, exported.getGraph(NodeFactory.createURI(STORE + "-shacl")).size());
+        assertEquals(family.size() + 1, exported.getGraph(NodeFactory.createURI(STORE)).size());
+    }
+
+    @Test
+    public void testWriteModels_ConcurrentWrite() throws IOException {
+        Model extra = ModelFactory.createDefaultModel();
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        extra.add(extra.createResource("urn:Cat"), RDFS.label, "Cat");
+        ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] bytes, int offset, int length) {
+                //a write must commit while the export is being streamed
+                if (size() == 0) {
+                    try {
+                        writer.submit(() -> manager.addModel(WAREHOUSE, extra, STORE)).get(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException | ExecutionException | TimeoutException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                }
+                super.write(bytes, offset, length);
+            }
+        };
+        try {
+            assertEquals(family.size(), manager.writeModels(WAREHOUSE, output));
+        } finally {
+            writer.shutdown();
+        }
+        assertEquals(family.size() + 1, manager.getModel(WAREHOUSE, STORE).size());
+    }
+
+    @Test
+    public void testWriteModels_Reimport() throws IOException {
+        ImportReport report = new ImportReport();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        importModels("<urn:family> { <urn:Cat> <http://www.w3.org/2000/01/rdf-schema#label> \"Cat\" }", new ImportReport());
+        manager.writeModels(WAREHOUSE, output);
+        Connections.close(WAREHOUSE);
+        FileUtils.deleteDirectory(directory);
+        directory.mkdirs();
+        try (Spool content = Spool.of(new ByteArrayInputStream(output.toByteArray()), Lang.NQUADS, null)) {
+            manager.importModels(WAREHOUSE, content, report);
+        }
+        assertEquals(family.size() + 2, report.getStored());
+        assertEquals(family.size() + 1, manager.getModel(WAREHOUSE, STORE).size());
+        assertEquals(1, manager.getModel(WAREHOUSE, STORE + "-shacl").size());
+    }
+
+    @Test
+    public void testImportModels_InvalidShapes() throws IOException {
+        try {
+            importModels("<urn:family-shacl> { <urn:CatShape> a <http://www.w3.org/ns/shacl#NodeShape> ; "
+                    + "<http://www.w3.org/ns/shacl#property> [ <http://www.w3.org/ns/shacl#name> \"name\" ] }",
+                    new ImportReport());
+            fail("Shapes without sh:path imported");
+        } catch (IllegalArgumentException ex) {
+            assertEquals(1, manager.getModel(WAREHOUSE, STORE + "-shacl").size());
+        }
+    }
+
+    @Test
+    public void testGetModel_Filtered() {
+        Resource dog = ResourceFactory.createResource("urn:DogShape");
+        Model filtered = manager.getModel(WAREHOUSE, STORE,
+                "<http://www.w3.org/2000/01/rdf-schema#label>=\"Dog\"",
+                "<http://www.w3.org/ns/shacl#targetClass>");
+        assertEquals(1, filtered.size());
+        assertTrue(filtered.contains(dog, filtered.createProperty("http://www.w3.org/ns/shacl#targetClass")));
+    }
+
+    @Test
+    public void testGetModel_FullText() {
+        Resource dog = ResourceFactory.createResource("urn:DogShape");
+        Model filtered = manager.getModel(WAREHOUSE, STORE,
+                "<http://www.w3.org/2000/01/rdf-schema#label>~\"dog\"",
+                "<http://www.w3.org/ns/shacl#targetClass>");
+        assertEquals(1, filtered.size());
+        assertTrue(filtered.contains(dog, filtered.createProperty("http://www.w3.org/ns/shacl#targetClass")));
+    }
+
+    @Test
+    public void testGetModel_FullTextSubstring() {
+        Resource dog = ResourceFactory.createResource("urn:DogShape");
+        Model filtered = manager.getModel(WAREHOUSE, STORE,
+                "<http://www.w3.org/2000/01/rdf-schema#label>~\"og\"",
+                "<http://www.w3.org/2000/01/rdf-schema#label>");
+        assertEquals(1, filtered.size());
+        assertTrue(filtered.contains(dog, RDFS.label));
+    }
+
+    @Test
+    public void testGetModel_FullTextStopWord() {
+        Model extra = ModelFactory.createDefaultModel();
+        Resource cat = extra.createResource("urn:Cat");
+        extra.add(cat, RDFS.label, "The Cat");
+        manager.addModel(WAREHOUSE, extra, STORE);
+        Model filtered = manager.getModel(WAREHOUSE, STORE,
+                "<http://www.w3.org/2000/01/rdf-schema#label>~\"the\"",
+                "<http://www.w3.org/2000/01/rdf-schema#label>");
+        assertEquals(1, filtered.size());
+        assertTrue(filtered.contains(cat, RDFS.label));
+    }
+
+    @Test
+    public void testGetModel_FullTextOverHitsLimit() {
+        Model extra = ModelFactory.createDefaultModel();
+        for (int i = 0; i <= Environment.QUERY_TEXT_MAX_HITS; i++)
+            extra.add(extra.createResource("urn:Pet" + i), RDFS.label, "Pet " + i);
+        manager.addModel(WAREHOUSE, extra, STORE);
+        Model filtered = manager.getModel(WAREHOUSE, STORE,
+                "<http://www.w3.org/2000/01/rdf-schema#label>~\"pet\"",
+                "<http://www.w3.org/2000/01/rdf-schema#label>");
+        assertEquals(Environment.QUERY_TEXT_MAX_HITS + 1, filtered.size());
+    }
+
+    private Set<RDFNode> search(QueryCriteria criteria) {
+        String base = "http://localhost/oslc/manager/family/NodeShape";
+        Model page = manager.search(WAREHOUSE, criteria, "family", base);
+        return page.listObjectsOfProperty(page.getResource(base), RDFS.member).toSet();
+    }
+
+    @Test
+    public void testSearch_Paged() {
+        Resource shape = ResourceFactory.createResource("http://www.w3.org/ns/shacl#NodeShape");
+        QueryCriteria criteria = QueryCriteria.type(shape).paging(true, 1, null);
+        Set<RDFNode> first = search(criteria);
+        assertEquals(1, first.size());
+        assertNotNull(criteria.getNextPageToken());
+        criteria = QueryCriteria.type(shape).paging(true, 1, criteria.getNextPageToken());
+        Set<RDFNode> second = search(criteria);
+        assertEquals(1, second.size());
+        assertFalse(first.equals(second));
+        assertNull(criteria.getNextPageToken());
+    }
+
+    @Test
+    public void testSearch_PagedOrdered() {
+        Resource shape = ResourceFactory.createResource("http://www.w3.org/ns/shacl#NodeShape");
+        QueryCriteria criteria = QueryCriteria.type(shape).orderBy("-rdfs:label").paging(true, 1, null);
+        assertEquals(Collections.singleton(ResourceFactory.createResource("urn:PersonShape")), search(criteria));
+        criteria = QueryCriteria.type(shape).orderBy("-rdfs:label").paging(true, 1, criteria.getNextPageToken());
+        assertEquals(Collections.singleton(ResourceFactory.createResource("urn:DogShape")), search(criteria));
+        assertNull(criteria.getNextPageToken());
+    }
+
+    @Test
+    public void testSearch_PagedMixedTypes() {
+        Set<RDFNode> members = new HashSet<>();
+        Model extra = ModelFactory.createDefaultModel();
+        Resource shape = ResourceFactory.createResource("http://www.w3.org/ns/shacl#NodeShape");
+        QueryCriteria criteria = QueryCriteria.type(shape).orderBy("+rdfs:label").paging(true, 1, null);
+        extra.add(extra.createResource("urn:CatShape"), RDF.type, shape);
+        extra.addLiteral(extra.createResource("urn:CatShape"), RDFS.label, 7);
+        manager.addModel(WAREHOUSE, extra, STORE);
+        for (int i = 0; i < 3; i++) {
+            members.addAll(search(criteria));
+            criteria = QueryCriteria.type(shape).orderBy("+rdfs:label").paging(true, 1, criteria.getNextPageToken());
+            assertEquals(i + 1, members.size());
+        }
+        assertTrue(members.contains(ResourceFactory.createResource("urn:CatShape")));
+    }
+
+    @Test
+    public void testSearch_TotalCount() {
+        Model extra = ModelFactory.createDefaultModel();
+        String base = "http://localhost/oslc/manager/family/NodeShape";
+        Resource shape = ResourceFactory.createResource("http://www.w3.org/ns/shacl#NodeShape");
+        Model page = manager.search(WAREHOUSE, QueryCriteria.type(shape).paging(true, 1, null), "family", base);
+        assertEquals(2, page.getResource(base).getProperty(OSLCModel.PROPS.PATHS.TOTAL_COUNT).getLong());
+        extra.add(extra.createResource("urn:CatShape"), RDF.type, shape);
+        manager.addModel(WAREHOUSE, extra, STORE);
+        page = manager.search(WAREHOUSE, QueryCriteria.type(shape).paging(true, 1, null), "family", base);
+        assertEquals(3, page.getResource(base).getProperty(OSLCModel.PROPS.PATHS.TOTAL_COUNT).getLong());
+    }
+
+    @Test
+    public void testSearch_Cached() {
+        String base = "http://localhost/oslc/manager/family/NodeShape";
+        Resource shape = ResourceFactory.createResource("http://www.w3.org/ns/shacl#NodeShape");
+        long hits = manager.getSearchCacheHits();
+        Model first = manager.search(WAREHOUSE, QueryCriteria.type(shape), "family", base);
+        first.removeAll();
+        Model second = manager.search(WAREHOUSE, QueryCriteria.type(shape), "family", base);
+        assertEquals(hits + 1, manager.getSearchCacheHits());
+        assertEquals(2, second.listObjectsOfProperty(RDFS.member).toSet().size());
+        manager.removeModel(WAREHOUSE, STORE);
+        second = manager.search(WAREHOUSE, QueryCriteria.type(shape), "family", base);
+        assertEquals(hits + 1, manager.getSearchCacheHits());
+        assertEquals(0, second.listObjectsOfProperty(RDFS.member).toSet().size());
+    }
+
+    @Test
+    public void testSearch_Conditions() {
+        Resource dog = ResourceFactory.createResource("urn:DogShape");
+        Resource person = ResourceFactory.createResource("urn:PersonShape");
+        Resource shape = ResourceFactory.createResource("http://www.w3.org/ns/shacl#NodeShape");
+        String prefixes = "rdfs=<http://www.w3.org/2000/01/rdf-schema#>,sh=<http://www.w3.org/ns/shacl#>";
+        QueryCriteria in = QueryCriteria.type(shape).prefixes(prefixes).where("rdfs:label in [\"Dog\",\"Person\"]");
+        QueryCriteria missing = QueryCriteria.type(shape).prefixes(prefixes).where("rdfs:label in [\"Dog\",\"Cat\"]");
+        QueryCriteria different = QueryCriteria.type(shape).prefixes(prefixes).where("rdfs:label!=\"Dog\"");
+        QueryCriteria scoped = QueryCriteria.type(shape).prefixes(prefixes)
+                .where("sh:property{sh:datatype=<" + XSD.integer + "> and sh:maxInclusive>50}");
+        QueryCriteria ranged = QueryCriteria.type(shape).prefixes(prefixes).where("sh:property{sh:maxInclusive>=101}");
+        assertEquals(new HashSet<>(Arrays.asList(dog, person)), search(in));
+        assertEquals(Collections.singleton(dog), search(missing));
+        assertEquals(Collections.singleton(person), search(different));
+        assertEquals(Collections.singleton(person), search(scoped));
+        assertTrue(search(ranged).isEmpty());
+    }
+
+    @Test
+    public void testSearch_SearchTerms() {
+        Resource shape = ResourceFactory.createResource("http://www.w3.org/ns/shacl#NodeShape");
+        QueryCriteria criteria = QueryCriteria.type(shape).searchTerms("\"dog\"");
+        assertEquals(Collections.singleton(ResourceFactory.createResource("urn:DogShape")), search(criteria));
+        criteria = QueryCriteria.type(shape).searchTerms("\"cat\"");
+        assertTrue(search(criteria).isEmpty());
+    }
+
+    @Test
+    public void testSearch_SearchTermsPaged() {
+        String base = "http://localhost/oslc/manager/family/NodeShape";
+        Property score = ResourceFactory.createProperty("http://open-services.net/ns/core#score");
+        Resource shape = ResourceFactory.createResource("http://www.w3.org/ns/shacl#NodeShape");
+        QueryCriteria criteria = QueryCriteria.type(shape).searchTerms("\"dog\",\"person\"").paging(true, 1, null);
+        Model first = manager.search(WAREHOUSE, criteria, "family", base);
+        criteria = QueryCriteria.type(shape).searchTerms("\"dog\",\"person\"").paging(true, 1, criteria.getNextPageToken());
+        Model second = manager.search(WAREHOUSE, criteria, "family", base);
+        Resource firstMember = first.listObjectsOfProperty(RDFS.member).next().asResource();
+        Resource secondMember = second.listObjectsOfProperty(RDFS.member).next().asResource();
+        assertNull(criteria.getNextPageToken());
+        assertFalse(firstMember.equals(secondMember));
+        assertTrue(first.getProperty(firstMember, score).getFloat()
+                >= second.getProperty(secondMember, score).getFloat());
+    }
+
+    @Test
+    public void testSearch_SearchTermsFilteredHits() {
+        Model extra = ModelFactory.createDefaultModel();
+        Resource shape = ResourceFactory.createResource("http://www.w3.org/ns/shacl#NodeShape");
+        for (int i = 0; i < 5; i++)
+            extra.add(extra.createResource("urn:Dog" + i), RDFS.label, "Dog");
+        manager.removeModel(WAREHOUSE, STORE);
+        manager.addModel(WAREHOUSE, extra, STORE);
+        manager.addModel(WAREHOUSE, family, STORE);
+        QueryCriteria criteria = QueryCriteria.type(shape).searchTerms("\"dog\"").paging(true, 1, null);
+        assertEquals(Collections.singleton(ResourceFactory.createResource("urn:DogShape")), search(criteria));
+        assertNull(criteria.getNextPageToken());
+    }
+
+    @Test
+    public void testSearch_SearchTermsUpdated() {
+        Model extra = ModelFactory.createDefaultModel();
+        Resource shape = ResourceFactory.createResource("http://www.w3.org/ns/shacl#NodeShape");
+        Resource cat = extra.createResource("urn:CatShape");
+        extra.add(cat, RDF.type, shape);
+        extra.add(cat, RDFS.label, "Cat");
+        manager.addModel(WAREHOUSE, extra, STORE);
+        assertEquals(Collections.singleton(cat), search(QueryCriteria.type(shape).searchTerms("\"cat\"")));
+    }
+
+    @Test(expected = QueryLimitException.class)
+    public void testSearch_MaxTriples() throws IOException {
+        Resource shape = ResourceFactory.createResource("http://www.w3.org/ns/shacl#NodeShape");
+        Connections.close(WAREHOUSE);
+        FileUtils.writeStringToFile(new File(directory, "query.properties"), "max.triples=3", StandardCharsets.UTF_8);
+        search(QueryCriteria.type(shape).select("*"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSearch_BadPageToken() {
+        QueryCriteria.type(RDFS.Class).paging(true, 1, "Ingi");
+    }
+
+    @Test
+    public void testMergeModel() throws IOException {
+        ImportReport report = new ImportReport();
+        Model upload = ModelFactory.createDefaultModel();
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        Resource dog = upload.createResource("urn:DogShape");
+        Resource cat = upload.createResource("urn:CatShape");
+        upload.add(dog, RDF.type, RDFS.Resource);
+        upload.add(dog, RDFS.label, "Doggy");
+        upload.add(cat, RDF.type, RDFS.Resource);
+        upload.add(cat, RDFS.label, "Cat");
+        upload.setNsPrefix("rdfs", RDFS.uri);
+        RDFDataMgr.write(payload, upload, Lang.TURTLE);
+        try (Spool content = Spool.of(new ByteArrayInputStream(payload.toByteArray()), Lang.TURTLE, null)) {
+            manager.mergeModel(WAREHOUSE, content, STORE, report);
+        }
+        Model stored = manager.getModel(WAREHOUSE, STORE);
+        assertEquals(Collections.singleton(dog), report.getExisting());
+        assertEquals(4, report.getTriples());
+        assertEquals(2, report.getStored());
+        assertTrue(report.isModified());
+        assertTrue(stored.contains(cat, RDFS.label));
+        assertFalse(stored.contains(dog, RDFS.label, "Doggy"));
+        assertEquals(RDFS.uri, report.getPrefixes().get("rdfs"));
+    }
+
+    @Test
+    public void testMergeModel_EmptyStore() throws IOException {
+        ImportReport report = new ImportReport();
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        RDFDataMgr.write(payload, family, Lang.TURTLE);
+        try (Spool content = Spool.of(new ByteArrayInputStream(payload.toByteArray()), Lang.TURTLE, null)) {
+            manager.mergeModel(WAREHOUSE, content, "urn:empty", report);
+        }
+        assertEquals(family.size(), report.getTriples());
+        assertEquals(family.size(), report.getStored());
+        assertTrue(family.isIsomorphicWith(manager.getModel(WAREHOUSE, "urn:empty")));
+    }
+
+    @Test
+    public void testLoadModel() throws IOException {
+        ImportReport report = new ImportReport();
+        byte[] payload = "<urn:Cat> <http://www.w3.org/2000/01/rdf-schema#label> \"Cat\" .\n".getBytes();
+        try (Spool content = Spool.of(new ByteArrayInputStream(payload), Lang.NTRIPLES, null)) {
+            manager.loadModel(WAREHOUSE, content, STORE, report);
+        }
+        assertEquals(1, report.getStored());
+        assertEquals(family.size() + 1, manager.getModel(WAREHOUSE, STORE).size());
+        assertEquals(1, manager.getModel(WAREHOUSE, STORE, "<http://www.w3.org/2000/01/rdf-schema#label>~\"cat\"",
+                "<http://www.w3.org/2000/01/rdf-schema#label>").size());
+    }
+
+    private void importModels(String payload, ImportReport report) throws IOException {
+        Dataset dataset = Connections.acquire(WAREHOUSE);
+        dataset.begin(ReadWrite.WRITE);
+        try {
+            dataset.getNamedModel(STORE + "-shacl").add(RDFS.Resource, RDF.type, RDFS.Class);
+            dataset.commit();
+        } finally {
+            dataset.end();
+            Connections.release(WAREHOUSE);
+        }
+        try (Spool content = Spool.of(new ByteArrayInputStream(payload.getBytes()), Lang.TRIG, null)) {
+            manager.importModels(WAREHOUSE, content, report);
+        }
+    }
+
+    @Test
+    public void testImportModels() throws IOException {
+        ImportReport report = new ImportReport();
+        importModels("<urn:family> { <urn:Cat> <http://www.w3.org/2000/01/rdf-schema#label> \"Cat\" }", report);
+        assertEquals(1, report.getStored());
+        assertEquals(family.size() + 1, manager.getModel(WAREHOUSE, STORE).size());
+    }
+
+    @Test
+    public void testImportModels_Existing() throws IOException {
+        ImportReport report = new ImportReport();
+        importModels("<urn:family> { <urn:DogShape> <http://www.w3.org/2000/01/rdf-schema#label> \"Dog\" .\n"
+                + "<urn:Cat> <http://www.w3.org/2000/01/rdf-schema#label> \"Cat\" }", report);
+        assertEquals(2, report.getTriples());
+        assertEquals(1, report.getStored());
+        assertEquals(family.size() + 1, manager.getModel(WAREHOUSE, STORE).size());
+    }
+
+    @Test
+    public void testImportModels_UnknownStore() throws IOException {
+        try {
+            importModels("<urn:family> { <urn:Cat> <http://www.w3.org/2000/01/rdf-schema#label> \"Cat\" }\n"
+                    + "<urn:unknown> { <urn:Cat> <http://www.w3.org/2000/01/rdf-schema#label> \"Cat\" }", new ImportReport());
+            fail("Graph without SHACL shape graph imported");
+        } catch (IllegalArgumentException ex) {
+            assertEquals(family.size(), manager.getModel(WAREHOUSE, STORE).size());
+            assertFalse(manager.containsModel(WAREHOUSE, "urn:unknown"));
+        }
     }
 
 }
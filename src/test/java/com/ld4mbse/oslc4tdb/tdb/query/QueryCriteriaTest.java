@@ -0,0 +1,142 @@
+package com.ld4mbse.oslc4tdb.tdb.query;
+
+import com.ld4mbse.oslc4tdb.model.Environment;
+import java.util.Arrays;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementOptional;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests cases for {@link QueryCriteria}.
+ * @author rherrera
+ */
+public class QueryCriteriaTest {
+
+    private QueryCriteria getCriteria() {
+        return QueryCriteria.type(ResourceFactory.createResource("http://example.org/Person"))
+                .prefixes("ex=<http://example.org/>")
+                .where("ex:age=12 and ex:name=\"Joe\"@en")
+                .select("ex:name,ex:knows{ex:name}")
+                .orderBy("-ex:name");
+    }
+
+    @Test
+    public void testGetSparqlQuery() {
+        Query query = getCriteria().getSparqlQuery("http://localhost/query", "family");
+        assertTrue(query.isConstructType());
+        assertEquals(query.toString(), QueryFactory.create(query.toString()).toString());
+        assertEquals(1, query.getOrderBy().size());
+    }
+
+    @Test
+    public void testGetPageQuery() {
+        QueryCriteria criteria = getCriteria().paging(true, 10, null);
+        Query query = criteria.getPageQuery("family");
+        assertTrue(query.isSelectType());
+        assertEquals(11, query.getLimit());
+        assertEquals(query.toString(), QueryFactory.create(query.toString()).toString());
+    }
+
+    @Test
+    public void testGetPageHits() {
+        QueryCriteria criteria = getCriteria().searchTerms("\"joe\"").paging(true, 10, null);
+        QuerySolutionMap last = new QuerySolutionMap();
+        assertEquals(11, criteria.getPageHits());
+        assertTrue(criteria.getPageQuery("family").toString().contains(" 11 )"));
+        last.add("M", ResourceFactory.createResource("urn:joe"));
+        last.add("S0", ResourceFactory.createTypedLiteral(1.5f));
+        last.add("S1", ResourceFactory.createPlainLiteral("Joe"));
+        criteria = getCriteria().searchTerms("\"joe\"").paging(true, 10, criteria.getPageToken(last));
+        assertEquals(21, criteria.getPageHits());
+        assertEquals(Environment.QUERY_TEXT_MAX_HITS, getCriteria().paging(true, 10, null).getPageHits());
+    }
+
+    @Test
+    public void testGetCountQuery() {
+        Query query = getCriteria().getCountQuery("family");
+        assertEquals(query.toString(), QueryFactory.create(query.toString()).toString());
+    }
+
+    @Test
+    public void testGetSparqlQuery_SearchTerms() {
+        Query query = getCriteria().searchTerms("\"joe\"").getSparqlQuery("http://localhost/query", "family");
+        assertTrue(query.toString().contains("<http://jena.apache.org/text#query>"));
+        assertEquals(query.toString(), QueryFactory.create(query.toString()).toString());
+        assertEquals(2, query.getOrderBy().size());
+    }
+
+    @Test
+    public void testGetSparqlQuery_Conditions() {
+        Query query = QueryCriteria.type(ResourceFactory.createResource("http://example.org/Person"))
+                .prefixes("ex=<http://example.org/>")
+                .where("ex:id in [\"a\",\"b\",\"c\"] and ex:age>=12 and ex:knows{ex:name=\"Joe\"}")
+                .getSparqlQuery("http://localhost/query", "family");
+        String sparql = query.toString();
+        assertTrue(sparql.contains("VALUES ?Mexid { \"a\" \"b\" \"c\" }"));
+        assertTrue(sparql.contains("FILTER ( ?Mexage >= 12 )"));
+        assertTrue(sparql.contains("ex:name  \"Joe\""));
+        assertEquals(sparql, QueryFactory.create(sparql).toString());
+    }
+
+    @Test
+    public void testGetSparqlQuery_Shape() {
+        Shape shape = new Shape();
+        shape.declare("http://example.org/name", true);
+        shape.declare("http://example.org/age", false);
+        shape.declare("http://example.org/knows", false);
+        Query query = getCriteria().shape(shape).getSparqlQuery("http://localhost/query", "family");
+        long optionals = ((ElementGroup) query.getQueryPattern()).getElements().stream()
+                .filter((element) -> element instanceof ElementOptional).count();
+        assertEquals(2, optionals);
+        assertEquals(query.toString(), QueryFactory.create(query.toString()).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValidate_UndeclaredProperty() {
+        Shape shape = new Shape();
+        shape.declare("http://example.org/name", true);
+        getCriteria().shape(shape).validate();
+    }
+
+    @Test
+    public void testCopy() {
+        QueryCriteria criteria = getCriteria();
+        QueryCriteria copy = criteria.copy().paging(true, 10, null);
+        Query query = criteria.getSparqlQuery("http://localhost/query", "family");
+        Query count = criteria.getCountQuery("family");
+        assertNotSame(count, copy.getCountQuery("family"));
+        assertSame(count.getQueryPattern(), copy.getCountQuery("family").getQueryPattern());
+        assertNotSame(query, copy.getSparqlQuery("http://localhost/query", "family"));
+        assertEquals(query, copy.getSparqlQuery("http://localhost/query", "family"));
+        assertSame(query.getQueryPattern(), copy.getSparqlQuery("http://localhost/query", "family").getQueryPattern());
+        assertFalse(criteria.isPaged());
+        query = copy.getSparqlQuery("http://localhost/query", Arrays.asList("urn:joe"), "family");
+        assertTrue(query.toString().contains("VALUES ?M { <urn:joe> }"));
+        assertEquals(1, query.getOrderBy().size());
+    }
+
+    @Test
+    public void testGetPageQuery_DeepHitsNotPrepared() {
+        QueryCriteria criteria = getCriteria().searchTerms("\"joe\"").paging(true, 10, null);
+        Query first = criteria.getPageQuery(11, "family");
+        assertSame(first.getQueryPattern(), criteria.getPageQuery(11, "family").getQueryPattern());
+        first = criteria.getPageQuery(21, "family");
+        assertNotSame(first.getQueryPattern(), criteria.getPageQuery(21, "family").getQueryPattern());
+        assertEquals(first, criteria.getPageQuery(21, "family"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetSparqlQuery_UnknownPrefix() {
+        QueryCriteria.type(null).where("foo:bar=12").getSparqlQuery("http://localhost/query", "family");
+    }
+
+}
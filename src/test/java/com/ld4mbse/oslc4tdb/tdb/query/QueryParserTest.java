@@ -0,0 +1,102 @@
+package com.ld4mbse.oslc4tdb.tdb.query;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests cases for {@link QueryParser}.
+ * @author rherrera
+ */
+public class QueryParserTest {
+
+    private void assertError(String parameter, String input, int position) {
+        try {
+            QueryParser parser = new QueryParser(parameter, input);
+            switch (parameter) {
+                case "oslc.where": parser.where(); break;
+                case "oslc.select": parser.select(); break;
+                case "oslc.orderBy": parser.orderBy(); break;
+                case "oslc.searchTerms": parser.search_terms(); break;
+                default: parser.prefix_defs();
+            }
+            fail("Parsed " + input);
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().startsWith("Bad formed " + parameter + " at position " + position + ":"));
+        }
+    }
+
+    @Test
+    public void testPrefixDefs() {
+        Map<String, String> prefixes = new QueryParser("oslc.prefix", "ex=<http://example.org/>,foaf=<http://xmlns.com/foaf/0.1/>").prefix_defs();
+        assertEquals("ex", prefixes.get("http://example.org/"));
+        assertEquals("foaf", prefixes.get("http://xmlns.com/foaf/0.1/"));
+    }
+
+    @Test
+    public void testWhere() {
+        List<Condition> conditions = new QueryParser("oslc.where",
+                "ex:age>=-1.5e3 and ex:name=\"J\\\"oe\"@en-US and ex:knows{ex:name in [\"a\",\"b\"^^xsd:string]} and *!=true").where();
+        assertEquals(4, conditions.size());
+        assertEquals(">=", conditions.get(0).getOperator());
+        assertArrayEquals(new String[]{"-1.5e3"}, conditions.get(0).getValues());
+        assertArrayEquals(new String[]{"\"J\\\"oe\"@en-US"}, conditions.get(1).getValues());
+        assertTrue(conditions.get(2).isScoped());
+        assertEquals("in", conditions.get(2).getProperties().get(0).getOperator());
+        assertArrayEquals(new String[]{"\"a\"", "\"b\"^^xsd:string"}, conditions.get(2).getProperties().get(0).getValues());
+        assertEquals(Property.WILDCARD, conditions.get(3).getProperty());
+    }
+
+    @Test
+    public void testSelect() {
+        List<Property> properties = new QueryParser("oslc.select", "ex:name,ex:knows{ex:name,ex:knows{*}}").select();
+        assertEquals(2, properties.size());
+        assertEquals("ex:knows", properties.get(1).getProperty());
+        assertEquals(Property.WILDCARD, ((Property) ((Property) properties.get(1).getProperties().get(1)).getProperties().get(0)).getProperty());
+    }
+
+    @Test
+    public void testOrderBy() {
+        List<SortKey> sortKeys = new QueryParser("oslc.orderBy", "-ex:name,ex:knows{+ex:name}").orderBy();
+        assertEquals(2, sortKeys.size());
+        assertTrue(sortKeys.get(0).isSimple());
+        assertFalse(sortKeys.get(0).isAscending());
+        assertFalse(sortKeys.get(1).isSimple());
+        assertTrue(sortKeys.get(1).getProperties().get(0).isAscending());
+    }
+
+    @Test
+    public void testSearchTerms() {
+        List<String> terms = new QueryParser("oslc.searchTerms", "\"dog\",\"big \\\"cat\\\"\"").search_terms();
+        assertEquals(2, terms.size());
+        assertEquals("dog", terms.get(0));
+        assertEquals("big \"cat\"", terms.get(1));
+    }
+
+    @Test
+    public void testErrors() {
+        assertError("oslc.prefix", "ex=http://example.org/", 3);
+        assertError("oslc.where", "ex:age=12 and ex:name", 21);
+        assertError("oslc.where", "ex:age=12 or ex:name=1", 9);
+        assertError("oslc.where", "ex:knows{ex:name=\"a\"", 20);
+        assertError("oslc.where", "ex:name=\"a\"@", 12);
+        assertError("oslc.select", "ex:name,", 8);
+        assertError("oslc.orderBy", "ex:name", 7);
+        assertError("oslc.searchTerms", "dog", 0);
+    }
+
+    @Test(timeout = 5000)
+    public void testWhere_Long() {
+        StringBuilder where = new StringBuilder("ex:a=1");
+        for (int i = 0; i < 100000; i++)
+            where.append(" and ex:a=1");
+        where.append(" and ex:a=");
+        assertError("oslc.where", where.toString(), where.length());
+    }
+
+}
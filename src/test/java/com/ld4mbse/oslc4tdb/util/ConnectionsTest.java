@@ -0,0 +1,139 @@
+package com.ld4mbse.oslc4tdb.util;
+
+import com.ld4mbse.oslc4tdb.model.Environment;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.vocabulary.RDFS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests cases for {@link Connections}.
+ * @author rherrera
+ */
+public class ConnectionsTest {
+    /**
+     * The warehouse name.
+     */
+    private static final String WAREHOUSE = "connections";
+    /**
+     * The warehouse directory.
+     */
+    private File directory;
+
+    @Before
+    public void init() {
+        directory = new File(Environment.TDB_LOCATION, WAREHOUSE);
+        directory.mkdirs();
+    }
+
+    @After
+    public void clean() throws IOException {
+        Connections.close(WAREHOUSE);
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testAcquire_SharesDataset() {
+        Dataset first = Connections.acquire(WAREHOUSE);
+        Dataset second = Connections.acquire(WAREHOUSE);
+        assertSame(first, second);
+        Connections.release(WAREHOUSE);
+        assertTrue(Connections.isReferenced(WAREHOUSE));
+        Connections.release(WAREHOUSE);
+        assertFalse(Connections.isReferenced(WAREHOUSE));
+        assertTrue(Connections.isOpen(WAREHOUSE));
+    }
+
+    @Test
+    public void testVersion() {
+        long version;
+        Connections.acquire(WAREHOUSE);
+        try {
+            version = Connections.getVersion(WAREHOUSE, "urn:graph");
+            assertEquals(version, Connections.getVersion(WAREHOUSE, "urn:graph"));
+            Connections.modified(WAREHOUSE, "urn:graph");
+            assertNotEquals(version, Connections.getVersion(WAREHOUSE, "urn:graph"));
+            version = Connections.getVersion(WAREHOUSE, "urn:graph");
+        } finally {
+            Connections.release(WAREHOUSE);
+        }
+        Connections.close(WAREHOUSE);
+        Connections.acquire(WAREHOUSE);
+        Connections.release(WAREHOUSE);
+        assertNotEquals(version, Connections.getVersion(WAREHOUSE, "urn:graph"));
+    }
+
+    @Test
+    public void testAcquire_BadSettings() throws IOException {
+        File settings = new File(directory, "query.properties");
+        FileUtils.writeStringToFile(settings, "timeout=soon\n", StandardCharsets.UTF_8);
+        try {
+            Connections.acquire(WAREHOUSE);
+            fail("Bad timeout accepted");
+        } catch (IllegalStateException ex) {
+            assertFalse(Connections.isOpen(WAREHOUSE));
+        }
+        FileUtils.writeStringToFile(settings, "timeout=5\n", StandardCharsets.UTF_8);
+        Connections.acquire(WAREHOUSE);
+        Connections.release(WAREHOUSE);
+        assertEquals(5, Connections.getQueryTimeout(WAREHOUSE));
+    }
+
+    private long countMatches(Dataset dataset, String text) {
+        String query = "SELECT (COUNT(*) AS ?count) { GRAPH <urn:graph> { ?s <http://jena.apache.org/text#query> \""
+                + text + "\" } }";
+        dataset.begin(ReadWrite.READ);
+        try (QueryExecution execution = QueryExecutionFactory.create(query, dataset)) {
+            return execution.execSelect().next().getLiteral("count").getLong();
+        } finally {
+            dataset.end();
+        }
+    }
+
+    @Test
+    public void testAcquire_RebuildsIncompleteIndex() {
+        Dataset dataset = Connections.acquire(WAREHOUSE);
+        File complete = new File(directory, "text.complete");
+        dataset.begin(ReadWrite.WRITE);
+        try {
+            dataset.getNamedModel("urn:graph").add(RDFS.Resource, RDFS.label, "Cat");
+            dataset.commit();
+        } finally {
+            dataset.end();
+            Connections.release(WAREHOUSE);
+        }
+        assertTrue(complete.isFile());
+        Connections.close(WAREHOUSE);
+        assertTrue(complete.delete());
+        dataset = Connections.acquire(WAREHOUSE);
+        try {
+            assertEquals(1, countMatches(dataset, "cat"));
+            assertTrue(complete.isFile());
+        } finally {
+            Connections.release(WAREHOUSE);
+        }
+    }
+
+    @Test
+    public void testClose() {
+        Connections.acquire(WAREHOUSE);
+        Connections.release(WAREHOUSE);
+        Connections.close(WAREHOUSE);
+        assertFalse(Connections.isOpen(WAREHOUSE));
+    }
+
+}
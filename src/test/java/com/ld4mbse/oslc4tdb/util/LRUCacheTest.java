@@ -0,0 +1,69 @@
+package com.ld4mbse.oslc4tdb.util;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests cases for {@link LRUCache}.
+ * @author rherrera
+ */
+public class LRUCacheTest {
+
+    @Test
+    public void testPut_EvictsLeastRecentlyUsed() {
+        LRUCache<String, Integer> cache = new LRUCache<>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+        cache.put("c", 3);
+        assertEquals(2, cache.size());
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void testPut_Disabled() {
+        LRUCache<String, Integer> cache = new LRUCache<>(0);
+        cache.put("a", 1);
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void testPut_ReplacesOverWeight() {
+        LRUCache<String, String> cache = new LRUCache<>(10, 5, String::length);
+        cache.put("a", "abc");
+        cache.put("a", "too long");
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void testRemoveIf() {
+        LRUCache<String, Integer> cache = new LRUCache<>(3);
+        cache.put("a/1", 1);
+        cache.put("a/2", 2);
+        cache.put("b/1", 3);
+        cache.removeIf((String key) -> key.startsWith("a/"));
+        assertEquals(1, cache.size());
+        assertEquals(Integer.valueOf(3), cache.get("b/1"));
+    }
+
+    @Test
+    public void testPut_EvictsOverWeight() {
+        LRUCache<String, String> cache = new LRUCache<>(10, 5, String::length);
+        cache.put("a", "abc");
+        cache.put("b", "de");
+        cache.put("c", "fg");
+        assertEquals(2, cache.size());
+        assertEquals(4, cache.getWeight());
+        assertNull(cache.get("a"));
+        cache.put("d", "too long");
+        assertNull(cache.get("d"));
+        assertEquals("de", cache.get("b"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+}
@@ -1,18 +1,30 @@
 package com.ld4mbse.oslc4tdb.util;
 
 import com.ld4mbse.oslc4tdb.model.OSLCModel;
+import com.ld4mbse.oslc4tdb.model.SHACLModel;
+import com.ld4mbse.oslc4tdb.tdb.query.Shape;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import org.apache.commons.io.FileUtils;
 import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.vocabulary.RDF;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests cases for {@link OslcShaclAdapter}.
@@ -72,4 +84,83 @@ public class OslcShaclAdapterTest {
         RDFDataMgr.write(System.out, warehouse, Lang.NQUADS);
     }
 
+    @Test
+    public void testGetServiceProviderCatalog() {
+        warehouse.addNamedModel("urn:family-shacl", warehouse.getDefaultModel());
+        OSLCModel oslcModel = OslcShaclAdapter.getOSLCModel(baseURI, warehouseName, warehouse);
+        Model master = OSLCModel.getServiceProviderCatalog(baseURI, "", "Master", null,
+                Collections.singletonMap(warehouseName, oslcModel));
+        Resource catalog = master.getResource(Requests.buildURI(baseURI, OSLCModel.PATHS.PREFIX, "",
+                OSLCModel.PATHS.SERVICE_PROVIDER_CATALOG));
+        Resource provider = master.getResource(Requests.buildURI(baseURI, OSLCModel.PATHS.PREFIX, warehouseName,
+                OSLCModel.PATHS.SERVICE_PROVIDER, "family"));
+        assertTrue(master.contains(catalog, OSLCModel.PROPS.SERVICE_PROVIDER.PATH, provider));
+        assertTrue(master.contains(null, OSLCModel.PROPS.PATHS.DESCRIBES,
+                master.getResource("http://xmlns.com/foaf/0.1/Person")));
+        assertFalse(master.contains(null, OSLCModel.PROPS.PATHS.DETAILS,
+                master.getResource(Requests.buildURI(baseURI, OSLCModel.PATHS.PREFIX, warehouseName,
+                        OSLCModel.PATHS.SERVICE_PROVIDER, warehouseName, "about"))));
+    }
+
+    @Test
+    public void testGetShape() {
+        warehouse.addNamedModel("urn:family-shacl", warehouse.getDefaultModel());
+        OSLCModel oslcModel = OslcShaclAdapter.getOSLCModel(baseURI, warehouseName, warehouse);
+        Shape shape = oslcModel.getShape("http://xmlns.com/foaf/0.1/Person");
+        assertTrue(shape.isDeclared("http://xmlns.com/foaf/0.1/name"));
+        assertFalse(shape.isExactlyOne("http://xmlns.com/foaf/0.1/name"));
+        assertFalse(shape.isDeclared("http://xmlns.com/foaf/0.1/familyName"));
+        assertNull(oslcModel.getShape("http://xmlns.com/foaf/0.1/Cat"));
+    }
+
+    @Test
+    public void testGetCreationFactory() {
+        warehouse.addNamedModel("urn:family-shacl", warehouse.getDefaultModel());
+        OSLCModel oslcModel = OslcShaclAdapter.getOSLCModel(baseURI, warehouseName, warehouse);
+        assertEquals("http://xmlns.com/foaf/0.1/Person", oslcModel.getResourceType("Person").getURI());
+        assertNull(oslcModel.getResourceType("Cat"));
+        assertEquals(Requests.buildURI(baseURI, OSLCModel.PATHS.PREFIX, warehouseName, "family", "Person"),
+                oslcModel.getCreationFactory("http://xmlns.com/foaf/0.1/Person", "family").getURI());
+        assertNull(oslcModel.getCreationFactory("http://xmlns.com/foaf/0.1/Cat", "family"));
+        assertNull(oslcModel.getCreationFactory("http://xmlns.com/foaf/0.1/Person", "pets"));
+    }
+
+    @Test
+    public void testPatch() {
+        Model pets = ModelFactory.createDefaultModel();
+        Resource catShape = pets.createResource("urn:CatShape");
+        pets.add(catShape, RDF.type, SHACLModel.TYPES.NODE_SHAPE);
+        pets.add(catShape, SHACLModel.PATHS.TARGET_CLASS, pets.createResource("http://xmlns.com/foaf/0.1/Cat"));
+        warehouse.addNamedModel("urn:family-shacl", warehouse.getDefaultModel());
+        OSLCModel previous = OslcShaclAdapter.getOSLCModel(baseURI, warehouseName, warehouse);
+        //adding a store
+        warehouse.addNamedModel("urn:pets-shacl", pets);
+        OSLCModel patched = previous.patch(warehouseName, warehouse, Collections.singleton("urn:pets-shacl"));
+        assertNotNull(patched.getShape("http://xmlns.com/foaf/0.1/Cat"));
+        assertNotNull(patched.getShape("http://xmlns.com/foaf/0.1/Person"));
+        assertNotNull(patched.getCreationFactory("http://xmlns.com/foaf/0.1/Cat", "pets"));
+        assertNull(previous.getShape("http://xmlns.com/foaf/0.1/Cat"));
+        assertEquals(OslcShaclAdapter.getOSLCModel(baseURI, warehouseName, warehouse).getResourceShapes().keySet(),
+                patched.getResourceShapes().keySet());
+        //removing a store
+        warehouse.removeNamedModel("urn:family-shacl");
+        patched = patched.patch(warehouseName, warehouse, Collections.singleton("urn:family-shacl"));
+        assertNull(patched.getShape("http://xmlns.com/foaf/0.1/Person"));
+        assertFalse(patched.getResourceShapes().containsKey("Person"));
+        assertTrue(patched.describeResource(OSLCModel.PATHS.PREFIX, warehouseName, OSLCModel.PATHS.SERVICE_PROVIDER,
+                "family").isEmpty());
+        assertTrue(patched.describeResource(OSLCModel.PATHS.PREFIX, warehouseName, OSLCModel.PATHS.RESOURCE_SHAPES,
+                "Person").isEmpty());
+        assertFalse(patched.describeResource(OSLCModel.PATHS.PREFIX, warehouseName, OSLCModel.PATHS.SERVICE_PROVIDER,
+                "pets").isEmpty());
+    }
+
+    @Test
+    public void testPatch_SharedShape() {
+        warehouse.addNamedModel("urn:family-shacl", warehouse.getDefaultModel());
+        OSLCModel previous = OslcShaclAdapter.getOSLCModel(baseURI, warehouseName, warehouse);
+        warehouse.addNamedModel("urn:relatives-shacl", warehouse.getDefaultModel());
+        assertNull(previous.patch(warehouseName, warehouse, Collections.singleton("urn:relatives-shacl")));
+    }
+
 }
\ No newline at end of file
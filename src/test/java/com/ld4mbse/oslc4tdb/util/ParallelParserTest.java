@@ -0,0 +1,82 @@
+package com.ld4mbse.oslc4tdb.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests cases for {@link ParallelParser}.
+ * @author rherrera
+ */
+public class ParallelParserTest {
+    /**
+     * Number of statements of the sample file, enough to span several chunks.
+     */
+    private static final int STATEMENTS = 300000;
+    /**
+     * The sample N-Triples file.
+     */
+    private File file;
+
+    @Before
+    public void init() throws IOException {
+        file = File.createTempFile("parallel-", ".nt");
+    }
+
+    @After
+    public void clean() {
+        file.delete();
+    }
+
+    private void write(String last) throws IOException {
+        write(last, -1, null);
+    }
+
+    private void write(String last, int position, String inserted) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            for (int i = 0; i < STATEMENTS; i++) {
+                if (i == position)
+                    writer.write(inserted);
+                writer.write("<urn:resource:" + i + "> <http://www.w3.org/2000/01/rdf-schema#label> \"Resource number " + i + "\" .\n");
+                if (i % 50000 == 0)
+                    writer.write("_:shared <http://www.w3.org/2000/01/rdf-schema#seeAlso> <urn:resource:" + i + "> .\n");
+            }
+            writer.write(last);
+        }
+    }
+
+    @Test
+    public void testParse() throws IOException {
+        Set<Node> blanks = new HashSet<>();
+        Graph graph = GraphFactory.createDefaultGraph();
+        write("<urn:last> <urn:p> <urn:o> .");
+        ParallelParser.parse(file, Lang.NTRIPLES, StreamRDFLib.graph(graph));
+        assertEquals(STATEMENTS + 7, graph.size());
+        graph.find(Node.ANY, Node.ANY, Node.ANY).forEachRemaining((Triple triple) -> {
+            if (triple.getSubject().isBlank()) blanks.add(triple.getSubject());
+        });
+        assertEquals(1, blanks.size());
+    }
+
+    @Test(expected = RiotException.class)
+    public void testParse_SyntaxError() throws IOException {
+        //inside an early chunk, so the chunks after it are parsed successfully
+        write("<urn:last> <urn:p> <urn:o> .\n", STATEMENTS / 4, "<urn:broken> <urn:p> .\n");
+        ParallelParser.parse(file, Lang.NTRIPLES, StreamRDFLib.sinkNull());
+    }
+
+}
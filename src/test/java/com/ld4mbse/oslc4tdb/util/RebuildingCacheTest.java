@@ -0,0 +1,97 @@
+package com.ld4mbse.oslc4tdb.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests cases for {@link RebuildingCache}.
+ * @author rherrera
+ */
+public class RebuildingCacheTest {
+
+    @Test
+    public void testGet_SingleFlight() throws Exception {
+        AtomicInteger builds = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        RebuildingCache<String, Integer> cache = new RebuildingCache<>((String key) -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return builds.incrementAndGet();
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> lookups = new ArrayList<>();
+        try {
+            for (int i = 0; i < 8; i++)
+                lookups.add(executor.submit(() -> cache.get("a")));
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<Integer> lookup : lookups)
+                assertEquals(Integer.valueOf(1), lookup.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, builds.get());
+    }
+
+    @Test
+    public void testGet_StaleWhileRebuilding() throws Exception {
+        AtomicInteger builds = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RebuildingCache<String, Integer> cache = new RebuildingCache<>((String key) -> {
+            if (builds.get() > 0) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+            return builds.incrementAndGet();
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals(Integer.valueOf(1), cache.get("a"));
+            cache.invalidate("a");
+            Future<Integer> rebuild = executor.submit(() -> cache.get("a"));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(1), cache.get("a"));
+            release.countDown();
+            assertEquals(Integer.valueOf(2), rebuild.get(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(2), cache.get("a"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testGet_FailedBuild() {
+        AtomicInteger builds = new AtomicInteger();
+        RebuildingCache<String, Integer> cache = new RebuildingCache<>((String key) -> {
+            if (builds.incrementAndGet() == 1)
+                throw new IllegalStateException("first build fails");
+            return builds.get();
+        });
+        try {
+            cache.get("a");
+            fail("the build failure was not reported");
+        } catch (IllegalStateException ex) {
+            assertEquals("first build fails", ex.getMessage());
+        }
+        assertEquals(Integer.valueOf(2), cache.get("a"));
+    }
+
+}